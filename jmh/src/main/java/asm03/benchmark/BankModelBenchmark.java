@@ -0,0 +1,194 @@
+package asm03.benchmark;
+
+import asm02.models.Account;
+import asm02.models.Customer;
+import asm02.models.Money;
+import asm03.models.DigitalBank;
+import asm03.models.LoanAccount;
+import asm03.models.ReceiptSink;
+import asm03.models.SavingsAccount;
+import asm03.models.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 銀行モデルの主要処理の JMH ベンチマーク（性能改善時の基準値として使う）。
+ * 顧客数・顧客あたりの口座数（{@link Param}）とスレッド数（JMH の -t）の組み合わせごとに、次の処理を計測する。
+ * <ul>
+ *   <li>Bank.findCustomerById</li>
+ *   <li>DigitalBank.isAccountExisted</li>
+ *   <li>SavingsAccount.withdraw / LoanAccount.withdraw</li>
+ *   <li>Customer.getTotalBalance</li>
+ *   <li>Transaction の生成</li>
+ * </ul>
+ * 1件あたりの割り当てバイト数は GC プロファイラ（-prof gc）の gc.alloc.rate.norm で確認する。
+ *
+ * 使い方: java -jar jmh/target/benchmarks.jar BankModelBenchmark -prof gc -t 4 -p customers=1000,100000
+ * または: java -cp jmh/target/benchmarks.jar asm03.benchmark.BankModelBenchmark [スレッド数,...]
+ *        （スレッド数ごとに GC プロファイラ付きで実行する）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BankModelBenchmark {
+
+    private static final long SAVINGS_AMOUNT = Money.ofUnits(50_000);
+    private static final long LOAN_AMOUNT = Money.ofUnits(1);
+    private static final long INITIAL_BALANCE = Money.ofUnits(1_000_000_000_000L);
+
+    // 口座番号は6桁のため、作成できる口座数には上限がある
+    private static final int MAX_ACCOUNTS = 1_000_000;
+
+    @Param({"1000", "100000"})
+    public int customers;
+
+    @Param({"1", "4"})
+    public int accountsPerCustomer;
+
+    private DigitalBank bank;
+    private String[] customerIds;
+    private String[] accountNumbers;
+    private SavingsAccount[] savingsAccounts;
+    private LoanAccount[] loanAccounts;
+    private Customer[] customerList;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // レシートの出力が計測に混ざらないよう、計測中は標準出力を捨てる
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        bank = new DigitalBank();
+        customerIds = new String[customers];
+        customerList = new Customer[customers];
+        List<Customer> batch = new ArrayList<>(customers);
+        for (int c = 0; c < customers; c++) {
+            customerIds[c] = String.format("001%09d", c);
+            customerList[c] = new Customer("CUSTOMER " + c, customerIds[c]);
+            batch.add(customerList[c]);
+        }
+        bank.addCustomers(batch);
+
+        int accountCount = (int) Math.min((long) customers * accountsPerCustomer, MAX_ACCOUNTS);
+        accountNumbers = new String[accountCount];
+        List<SavingsAccount> savings = new ArrayList<>();
+        List<LoanAccount> loans = new ArrayList<>();
+        for (int a = 0; a < accountCount; a++) {
+            String number = String.format("%06d", a);
+            accountNumbers[a] = number;
+            Account account;
+            if ((a & 1) == 0) {
+                SavingsAccount savingsAccount = new SavingsAccount(number, INITIAL_BALANCE);
+                savings.add(savingsAccount);
+                account = savingsAccount;
+            } else {
+                LoanAccount loanAccount = new LoanAccount(number, 0);
+                loans.add(loanAccount);
+                account = loanAccount;
+            }
+            customerList[a / accountsPerCustomer % customers].addAccount(account);
+        }
+        savingsAccounts = savings.toArray(new SavingsAccount[0]);
+        loanAccounts = loans.toArray(new LoanAccount[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ReceiptSink.shared().flush();
+        System.setOut(console);
+    }
+
+    /**
+     * スレッドごとの対象の選択位置。
+     * スレッドごとに異なる位置から始め、呼び出しのたびに一定の間隔で進める。
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private long iteration;
+        private long offset;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threads) {
+            offset = threads.getThreadIndex() * 104_729L;
+        }
+
+        int next(int size) {
+            return (int) ((iteration++ * 7919 + offset) % size);
+        }
+    }
+
+    @Benchmark
+    public Customer findCustomerById(Cursor cursor) {
+        return bank.findCustomerById(customerIds[cursor.next(customerIds.length)]);
+    }
+
+    @Benchmark
+    public boolean isAccountExisted(Cursor cursor) {
+        return bank.isAccountExisted(accountNumbers[cursor.next(accountNumbers.length)]);
+    }
+
+    @Benchmark
+    public boolean savingsAccountWithdraw(Cursor cursor) {
+        return savingsAccounts[cursor.next(savingsAccounts.length)].withdraw(SAVINGS_AMOUNT);
+    }
+
+    /**
+     * 口座番号の奇数番がローン口座になる（口座が1つしかない場合は対象がないため何もしない）。
+     */
+    @Benchmark
+    public boolean loanAccountWithdraw(Cursor cursor) {
+        return loanAccounts.length > 0 && loanAccounts[cursor.next(loanAccounts.length)].withdraw(LOAN_AMOUNT);
+    }
+
+    @Benchmark
+    public long getTotalBalance(Cursor cursor) {
+        return customerList[cursor.next(customerList.length)].getTotalBalance();
+    }
+
+    @Benchmark
+    public Transaction newTransaction() {
+        return new Transaction("000000", SAVINGS_AMOUNT, true);
+    }
+
+    /**
+     * 指定されたスレッド数（既定は 1 と CPU 数）ごとに、GC プロファイラ付きで全ベンチマークを実行する。
+     */
+    public static void main(String[] args) throws RunnerException {
+        String threadCounts = args.length > 0 ? args[0] : "1," + Runtime.getRuntime().availableProcessors();
+        for (String threads : threadCounts.split(",")) {
+            Options options = new OptionsBuilder()
+                    .include(BankModelBenchmark.class.getSimpleName())
+                    .threads(Integer.parseInt(threads.trim()))
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
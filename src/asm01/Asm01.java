@@ -1,5 +1,7 @@
 package asm01;
 
+import asm02.models.CitizenIdDecoder;
+
 import java.util.Random;
 import java.util.Scanner;
 
@@ -240,12 +242,11 @@ public class Asm01 {
                 System.out.print("個人番号（12桁数字）を入力してください： ");
                 String citizenId = input.next();  // 空白なしで1トークン読み込み
                 input.nextLine();                 // バッファクリア
-                if (citizenId != null && citizenId.matches("\\d{12}")) { // 12桁数字かどうか
-                    String provinceName = getProvinceName(citizenId);    // 省コードも同時にチェック
-                    if (!"Mã tỉnh không hợp lệ!".equals(provinceName)) {
-                        System.out.println(">>> 個人番号は有効です。 <<<");
-                        return citizenId;         // OK
-                    }
+                int decoded = CitizenIdDecoder.decode(citizenId); // 12桁数字と省コードを同時にチェック
+                if (decoded >= 0) {
+                    System.out.println(">>> 個人番号は有効です。 <<<");
+                    return citizenId;             // OK
+                } else if (decoded == CitizenIdDecoder.INVALID_PROVINCE) {
                     System.out.println("省コードが無効です。");
                 } else {
                     System.out.println("個人番号は12桁の数字でなければなりません。");
@@ -289,76 +290,12 @@ public class Asm01 {
     /*
      * getProvinceName: 個人番号の先頭3桁から省/市の名前を返す
      * - 入力はすでに12桁の数字である前提
-     * - 対応しないコードの場合は "Mã tỉnh không hợp lệ!" を返す（既存仕様を維持）
+     * - 対応しないコードの場合は "都道府県コードが無効です!" を返す（既存仕様を維持）
      */
     public static String getProvinceName(String citizenId) {
-        String provinceCode = citizenId.substring(0, 3); // 先頭3桁
-        switch (provinceCode) {
-            case "001": return "Hà Nội";
-            case "002": return "Hà Giang";
-            case "004": return "Cao Bằng";
-            case "006": return "Bắc Kạn";
-            case "008": return "Tuyên Quang";
-            case "010": return "Lào Cai";
-            case "011": return "Điện Biên";
-            case "012": return "Lai Châu";
-            case "014": return "Sơn La";
-            case "015": return "Yên Bái";
-            case "017": return "Hoà Bình";
-            case "019": return "Thái Nguyên";
-            case "020": return "Lạng Sơn";
-            case "022": return "Quảng Ninh";
-            case "024": return "Bắc Giang";
-            case "025": return "Phú Thọ";
-            case "026": return "Vĩnh Phúc";
-            case "027": return "Bắc Ninh";
-            case "030": return "Hải Dương";
-            case "031": return "Hải Phòng";
-            case "033": return "Hưng Yên";
-            case "034": return "Thái Bình";
-            case "035": return "Hà Nam";
-            case "036": return "Nam Định";
-            case "037": return "Ninh Bình";
-            case "038": return "Thanh Hoá";
-            case "040": return "Nghệ An";
-            case "042": return "Hà Tĩnh";
-            case "044": return "Quảng Bình";
-            case "045": return "Quảng Trị";
-            case "046": return "Thừa Thiên Huế";
-            case "048": return "Đà Nẵng";
-            case "049": return "Quảng Nam";
-            case "051": return "Quảng Ngãi";
-            case "052": return "Bình Định";
-            case "054": return "Phú Yên";
-            case "056": return "Khánh Hoà";
-            case "058": return "Ninh Thuận";
-            case "060": return "Bình Thuận";
-            case "062": return "Kon Tum";
-            case "064": return "Gia Lai";
-            case "066": return "Đắk Lắk";
-            case "067": return "Đắk Nông";
-            case "068": return "Lâm Đồng";
-            case "070": return "Bình Phước";
-            case "072": return "Tây Ninh";
-            case "074": return "Bình Dương";
-            case "075": return "Đồng Nai";
-            case "077": return "Bà Rịa - Vũng Tàu";
-            case "079": return "TP. Hồ Chí Minh";
-            case "080": return "Long An";
-            case "082": return "Tiền Giang";
-            case "083": return "Bến Tre";
-            case "084": return "Trà Vinh";
-            case "086": return "Vĩnh Long";
-            case "087": return "Đồng Tháp";
-            case "089": return "An Giang";
-            case "091": return "Kiên Giang";
-            case "092": return "Cần Thơ";
-            case "093": return "Hậu Giang";
-            case "094": return "Sóc Trăng";
-            case "095": return "Bạc Liêu";
-            case "096": return "Cà Mau";
-            default: return "都道府県コードが無効です!"; // 仕様そのまま維持
-        }
+        int decoded = CitizenIdDecoder.decode(citizenId);
+        if (decoded < 0) return "都道府県コードが無効です!"; // 仕様そのまま維持
+        return CitizenIdDecoder.provinceName(decoded);
     }
 
     /*
@@ -367,20 +304,9 @@ public class Asm01 {
      * - 次の2桁（インデックス4..5）が生年の下2桁
      */
     public static String getGenderAndBirthYear(String citizenId) {
-        char genderCode = citizenId.charAt(3);     // 性別・世紀コード
-        String year = citizenId.substring(4, 6);   // 生年の下2桁
-        switch (genderCode) {
-            case '0': return "性別: 男性 | 生年: 19" + year; // 1900-1999（男性）
-            case '1': return "性別: 女性 | 生年: 19" + year; // 1900-1999（女性）
-            case '2': return "性別: 男性 | 生年: 20" + year; // 2000-2099（男性）
-            case '3': return "性別: 女性 | 生年: 20" + year; // 2000-2099（女性）
-            case '4': return "性別: 男性 | 生年: 21" + year;
-            case '5': return "性別: 女性 | 生年: 21" + year;
-            case '6': return "性別: 男性 | 生年: 22" + year;
-            case '7': return "性別: 女性 | 生年: 22" + year;
-            case '8': return "性別: 男性 | 生年: 23" + year;
-            case '9': return "性別: 女性 | 生年: 23" + year;
-            default:  return "性別コードが不正です。";          // 0..9 以外
-        }
+        int decoded = CitizenIdDecoder.decode(citizenId);
+        if (decoded < 0) return "性別コードが不正です。";
+        String gender = CitizenIdDecoder.isFemale(decoded) ? "女性" : "男性";
+        return "性別: " + gender + " | 生年: " + CitizenIdDecoder.birthYear(decoded);
     }
 }
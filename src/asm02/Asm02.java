@@ -2,6 +2,7 @@ package asm02;
 
 import asm02.models.*;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
@@ -64,15 +65,17 @@ public class Asm02 {
     }
 
     /**
-     * 実数入力（最小値指定・3回まで再入力可能）
+     * 金額入力（最小値指定・3回まで再入力可能）
+     * 金額は最小単位（{@link Money}）の long で返す。失敗した場合は -1 を返す。
      */
-    private static Double readDoubleMinTry(String promptMessage, double minValue, int maxAttempts) {
+    private static long readMoneyMinTry(String promptMessage, long minValue, int maxAttempts) {
         for (int attempt = 1; attempt <= maxAttempts; attempt++) {
             System.out.print(promptMessage);
             try {
-                double inputValue = Double.parseDouble(input.nextLine().trim());
+                long inputValue = Money.parse(input.nextLine());
                 if (inputValue < minValue) {
-                    System.out.printf("入力値は %.2f 以上でなければなりません。（%d/%d回目）%n", minValue, attempt, maxAttempts);
+                    System.out.printf("入力値は %s 以上でなければなりません。（%d/%d回目）%n",
+                            Money.format(minValue), attempt, maxAttempts);
                     continue;
                 }
                 return inputValue;
@@ -81,7 +84,7 @@ public class Asm02 {
                 System.out.printf("入力エラー：数値を入力してください。（%d/%d回目）%n", attempt, maxAttempts);
             }
         }
-        return null;
+        return -1;
     }
 
     /**
@@ -192,8 +195,8 @@ public class Asm02 {
                 3);
         if (accountNumber == null) { System.out.println("戻ります。\n"); return; }
 
-        Double balance = readDoubleMinTry("初期残高を入力してください： ", 0.0, 3);
-        if (balance == null) { System.out.println("戻ります。\n"); return; }
+        long balance = readMoneyMinTry("初期残高を入力してください： ", 0, 3);
+        if (balance < 0) { System.out.println("戻ります。\n"); return; }
 
         try {
             Account account = new Account(accountNumber, balance);
@@ -211,32 +214,22 @@ public class Asm02 {
      * 顧客一覧（1行サマリー）
      */
     public static void showCustomerList() {
-        List<Customer> customers = bank.getCustomers();
-        if (customers == null || customers.isEmpty()) {
+        if (bank.getCustomers().isEmpty()) {
             System.out.println("\n登録されている顧客はいません。\n");
             return;
         }
 
-        customers.sort(java.util.Comparator.comparing(Customer::getName, String.CASE_INSENSITIVE_ORDER));
+        // 並べ替え・整形・集計は BankReport が複数スレッドで行う
+        BankReport report = BankReport.generate(bank,
+                java.util.Comparator.comparing(Customer::getName, String.CASE_INSENSITIVE_ORDER));
 
         System.out.println("\n================ 顧客一覧 ================");
         System.out.printf("%-4s | %-12s | %-20s | %-8s | %15s | %5s%n",
                 "No", "個人番号", "氏名", "区分", "総残高", "口座数");
         System.out.println("-----+--------------+----------------------+----------+------------------+-------");
-
-        int index = 1;
-        for (Customer customer : customers) {
-            String type = customer.isPremiumCustomer() ? "PREMIUM" : "NORMAL";
-
-            System.out.printf("%4d | %-12s | %-20s | %-8s | %,15.2f | %5d%n",
-                    index++,
-                    customer.getCustomerId(),
-                    customer.getName(),
-                    type,
-                    customer.getTotalBalance(),
-                    customer.getAccounts().size()
-            );
-        }
+        report.writeLinesTo(System.out);
+        System.out.println("-----+--------------+----------------------+----------+------------------+-------");
+        System.out.print(report.formatSummary());
         System.out.println("===========================================");
     }
 
@@ -1,16 +1,24 @@
 package asm02.models;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 public class Account {
-    // プレミアム口座と判定するための残高の閾値
-    private static final double PREMIUM_THRESHOLD = 10_000_000;
+    // プレミアム口座と判定するための残高の閾値（最小単位）
+    public static final long PREMIUM_THRESHOLD = Money.ofUnits(10_000_000);
 
     private String accountNumber; // 口座番号（6桁の数字）
-    private double balance;       // 残高
+    private volatile long balance;   // 残高（最小単位。他スレッドからの参照用に volatile）
+
+    // 残高の確認と更新を一体で行うための口座単位のロック
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 口座を保有する顧客（残高の変化を通知する。顧客に追加されるまでは null）
+    private volatile Customer owner;
 
     /**
-     * コンストラクタ：口座番号と残高を設定
+     * コンストラクタ：口座番号と残高（最小単位、{@link Money} 参照）を設定
      */
-    public Account(String accountNumber, double balance) {
+    public Account(String accountNumber, long balance) {
         setAccountNumber(accountNumber);
         setBalance(balance);
     }
@@ -23,34 +31,87 @@ public class Account {
      * 口座番号を設定する（6桁の数字のみ許可）
      */
     public void setAccountNumber(String accountNumber) {
-        if (accountNumber != null && accountNumber.matches("\\d{6}")) {
+        if (isSixDigits(accountNumber)) {
             this.accountNumber = accountNumber;
         } else {
             throw new IllegalArgumentException("口座番号は6桁の数字でなければなりません。");
         }
     }
 
-    public double getBalance() {
+    /**
+     * 口座単位のロックを返す。
+     * 出金などで「残高の確認 → 更新」を不可分に行う場合は、このロックを取得してから行う。
+     */
+    public ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * 6桁の数字かどうかを判定する（正規表現を使わず、オブジェクトを生成しない）。
+     */
+    private static boolean isSixDigits(String value) {
+        if (value == null || value.length() != 6) return false;
+        for (int i = 0; i < 6; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    /**
+     * 残高を最小単位（1/100 VND）で返す。
+     */
+    public long getBalance() {
         return balance;
     }
 
     /**
      * 残高を設定する（マイナスは不可）
+     * 口座単位のロック内で更新し、保有顧客に差額を通知する（顧客・銀行全体の集計値の更新）。
      */
-    public void setBalance(double balance) {
+    public void setBalance(long balance) {
         if (balance < 0) {
             throw new IllegalArgumentException("残高はマイナスにできません。");
         }
-        this.balance = balance;
+        lock.lock();
+        try {
+            long oldBalance = this.balance;
+            this.balance = balance;
+            Customer current = owner;
+            if (current != null && oldBalance != balance) {
+                current.balanceChanged(this, balance - oldBalance, isPremium(oldBalance), isPremium(balance));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 口座を保有する顧客を設定する。Customer.addAccount から口座のロック内で呼び出される。
+     */
+    void attachTo(Customer owner) {
+        this.owner = owner;
     }
 
     /**
      * プレミアム口座かどうか判定する（残高が1000万以上）
      */
     public boolean isPremium() {
+        return isPremium(balance);
+    }
+
+    private static boolean isPremium(long balance) {
         return balance >= PREMIUM_THRESHOLD;
     }
 
+    /**
+     * 残高が預金ではなく顧客の負債（借入の利用額）を表す口座かどうか。
+     * ローン口座のように残高を「利用額」として扱うサブクラスは true を返す。
+     */
+    public boolean isLiability() {
+        return false;
+    }
+
     /**
      * 口座区分を文字列で返す（"PREMIUM" または "NORMAL"）
      */
@@ -61,6 +122,6 @@ public class Account {
     @Override
     public String toString() {
         // デバッグ用の簡易表示。画面表示用のフォーマットは Customer.displayInformation() 側で行う。
-        return String.format("%-10s | %,15.2f", accountNumber, balance);
+        return String.format("%-10s | %15s", accountNumber, Money.format(balance));
     }
 }
@@ -0,0 +1,11 @@
+package asm02.models;
+
+/**
+ * 銀行全体の口座索引の要素。
+ * 口座と、その口座を保有している顧客の組を表す。
+ *
+ * @param account 口座
+ * @param owner   口座を保有している顧客
+ */
+public record AccountEntry(Account account, Customer owner) {
+}
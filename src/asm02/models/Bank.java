@@ -1,20 +1,48 @@
 package asm02.models;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 銀行クラス
  * - 銀行IDと顧客リストを管理するクラス
+ * - 個人番号をキーとしたハッシュ索引を持ち、検索・重複チェックを O(1) で行う
+ * - 口座番号をキーとした銀行全体の口座索引を持つ（Customer.addAccount と同期）
+ * - 氏名検索用の n-gram 索引を持つ（User.setName と同期）
+ * - 検索はロックなしで複数スレッドから同時に呼び出せる。登録・更新は銀行単位で直列化する
+ * - 預金総額・ローン利用総額・プレミアム数は残高の変更時に差額で更新し、O(1) で参照できる
  */
 public class Bank {
 
     // 銀行ID（UUIDで自動生成）
     private final String id;
 
-    // 顧客リスト
-    private List<Customer> customers;
+    // 顧客リスト（登録順を保持する）
+    private final List<Customer> customers;
+
+    // 個人番号 → 顧客 の索引
+    private final Map<String, Customer> customersById;
+
+    // 口座番号 → （口座, 保有顧客） の索引
+    private final Map<String, AccountEntry> accountsByNumber;
+
+    // 氏名検索用の索引
+    private final CustomerNameIndex nameIndex;
+
+    // 登録内容の変更の通知先（未設定の場合は null）
+    private volatile BankListener listener;
+
+    // 銀行全体の集計値（出金のたびに複数スレッドから加算されるため LongAdder を使う）
+    private final LongAdder totalDeposits = new LongAdder();
+    private final LongAdder totalLoans = new LongAdder();
+    private final LongAdder premiumAccounts = new LongAdder();
+    private final LongAdder premiumCustomers = new LongAdder();
 
     /**
      * コンストラクタ：銀行IDを生成し、顧客リストを初期化する
@@ -22,6 +50,9 @@ public class Bank {
     public Bank() {
         this.id = UUID.randomUUID().toString();
         this.customers = new ArrayList<>();
+        this.customersById = new ConcurrentHashMap<>();
+        this.accountsByNumber = new ConcurrentHashMap<>();
+        this.nameIndex = new CustomerNameIndex();
     }
 
     /**
@@ -31,47 +62,266 @@ public class Bank {
      * @param customer 追加対象の顧客
      * @return 追加成功なら true、重複などで失敗した場合は false
      */
-    public boolean addCustomer(Customer customer) {
-        if (findCustomerById(customer.getCustomerId()) != null) {
+    public synchronized boolean addCustomer(Customer customer) {
+        if (customersById.containsKey(customer.getCustomerId())) {
             System.out.println("この顧客はすでに登録されています。");
             return false;
         }
+        if (hasAccountConflict(customer)) {
+            System.out.println("この顧客の口座番号はすでに他の顧客に使用されています。");
+            return false;
+        }
+        register(customer, false);
+        return true;
+    }
+
+    /**
+     * 複数の顧客をまとめて追加する（一括登録用）。
+     * 顧客の一覧は事前に拡張し、重複チェックは1件ずつハッシュ索引で行う
+     * （ハッシュ索引は ConcurrentHashMap のため事前には拡張できず、登録に合わせて段階的に拡張される）。
+     * 氏名の索引化は次の氏名検索時にまとめて行う。
+     * 重複した顧客はメッセージを出さずにスキップする。
+     *
+     * @param newCustomers 追加対象の顧客
+     * @return 実際に追加された件数
+     */
+    public synchronized int addCustomers(Collection<? extends Customer> newCustomers) {
+        if (newCustomers == null || newCustomers.isEmpty()) {
+            return 0;
+        }
+        if (customers instanceof ArrayList<Customer> list) {
+            list.ensureCapacity(customers.size() + newCustomers.size());
+        }
+
+        int added = 0;
+        for (Customer customer : newCustomers) {
+            if (!customersById.containsKey(customer.getCustomerId()) && !hasAccountConflict(customer)) {
+                register(customer, true);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * 顧客を登録し、保有している口座を口座索引に追加する。
+     * 呼び出し前に重複チェックが済んでいること。
+     *
+     * @param bulk 一括登録の場合は true（氏名の索引化を次の検索時まで遅らせる）
+     */
+    private void register(Customer customer, boolean bulk) {
+        // 索引に公開する前にリスナーへ通知する（公開後の出金の記録が、顧客・口座の登録の記録より先に書かれないように）
+        BankListener current = listener;
+        if (current != null) {
+            current.onCustomerAdded(customer);
+            for (Account account : customer.getAccounts()) {
+                current.onAccountAdded(customer, account);
+            }
+        }
+
+        customersById.put(customer.getCustomerId(), customer);
         customers.add(customer);
+        for (Account account : customer.getAccounts()) {
+            accountsByNumber.put(account.getAccountNumber(), new AccountEntry(account, customer));
+            onAccountRegistered(account);
+        }
+        if (bulk) {
+            nameIndex.addLater(customer);
+        } else {
+            nameIndex.add(customer);
+        }
+        attach(customer);
+    }
+
+    /**
+     * 顧客を銀行に結び付け、顧客の現在の集計値を銀行全体の集計値に加える。
+     * 顧客の全口座のロックを取得した状態で行うため、同時に出金されても二重に数えない。
+     */
+    private void attach(Customer customer) {
+        List<Account> accounts = customer.getAccounts();
+        for (Account account : accounts) {
+            account.getLock().lock();
+        }
+        try {
+            customer.attachTo(this);
+            for (Account account : accounts) {
+                (account.isLiability() ? totalLoans : totalDeposits).add(account.getBalance());
+                if (account.isPremium()) {
+                    premiumAccounts.increment();
+                }
+            }
+            if (customer.isPremiumCustomer()) {
+                premiumCustomers.increment();
+            }
+        } finally {
+            for (Account account : accounts) {
+                account.getLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 口座の残高の変化を銀行全体の集計値に反映する。
+     * Customer から口座のロック内で呼び出される。
+     */
+    void balanceChanged(Account account, long delta, int premiumAccountDelta, int premiumCustomerDelta) {
+        (account.isLiability() ? totalLoans : totalDeposits).add(delta);
+        if (premiumAccountDelta != 0) {
+            premiumAccounts.add(premiumAccountDelta);
+        }
+        if (premiumCustomerDelta != 0) {
+            premiumCustomers.add(premiumCustomerDelta);
+        }
+    }
+
+    /**
+     * 預金総額（ローン口座以外の全口座の残高の合計、最小単位）
+     */
+    public long getTotalDeposits() {
+        return totalDeposits.sum();
+    }
+
+    /**
+     * ローン利用総額（全ローン口座の利用額の合計、最小単位）
+     */
+    public long getTotalLoans() {
+        return totalLoans.sum();
+    }
+
+    /**
+     * プレミアム口座の数
+     */
+    public long getPremiumAccountCount() {
+        return premiumAccounts.sum();
+    }
+
+    /**
+     * プレミアム顧客の数
+     */
+    public long getPremiumCustomerCount() {
+        return premiumCustomers.sum();
+    }
+
+    /**
+     * 登録内容の変更の通知先を設定する（null で解除）。
+     */
+    public synchronized void setListener(BankListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 顧客の氏名が変更されたときに氏名索引を更新する。
+     * Customer の氏名変更時に呼び出される。
+     */
+    synchronized void customerRenamed(Customer customer) {
+        nameIndex.update(customer);
+        BankListener current = listener;
+        if (current != null) {
+            current.onCustomerRenamed(customer);
+        }
+    }
+
+    /**
+     * 顧客が保有している口座のいずれかが、すでに他の顧客の口座番号として使われているか。
+     */
+    private boolean hasAccountConflict(Customer customer) {
+        for (Account account : customer.getAccounts()) {
+            if (accountsByNumber.containsKey(account.getAccountNumber())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 顧客に追加される口座を口座索引に登録する。
+     * Customer.addAccount から呼び出される。
+     *
+     * @return 登録できた場合は true、口座番号が銀行内ですでに使われている場合は false
+     */
+    synchronized boolean registerAccount(Customer owner, Account account) {
+        // 口座索引への追加は銀行のロック内でのみ行うため、確認と追加の間に他の登録が割り込むことはない
+        if (accountsByNumber.containsKey(account.getAccountNumber())) {
+            return false;
+        }
+        // 口座が検索できるようになる前に登録を通知する（register と同じ理由）
+        BankListener current = listener;
+        if (current != null) {
+            current.onAccountAdded(owner, account);
+        }
+        accountsByNumber.put(account.getAccountNumber(), new AccountEntry(account, owner));
+        onAccountRegistered(account);
         return true;
     }
 
+    /**
+     * 口座が口座索引に登録された後に呼び出される（銀行のロックを保持した状態）。
+     * 口座番号に依存する情報を持つサブクラスが必要に応じてオーバーライドする。
+     *
+     * @param account 登録された口座
+     */
+    protected void onAccountRegistered(Account account) {
+    }
+
+    /**
+     * 口座番号から口座と保有顧客を検索する。
+     *
+     * @param accountNumber 検索したい口座番号
+     * @return 見つかった場合は {@link AccountEntry}、見つからない場合は null
+     */
+    public AccountEntry findAccountByNumber(String accountNumber) {
+        if (accountNumber == null) return null;
+        return accountsByNumber.get(accountNumber);
+    }
+
     /**
      * 個人番号で顧客を検索する。
      * @param id 検索したい個人番号
      * @return 見つかった顧客、見つからない場合は null
      */
     public Customer findCustomerById(String id) {
-        for (Customer customer : customers) {
-            if (customer.getCustomerId().equals(id)) return customer;
-        }
-        return null;
+        if (id == null) return null;
+        return customersById.get(id);
     }
 
     /**
-     * 氏名（部分一致）で顧客を検索する（大文字・小文字は区別しない）。
+     * 氏名（部分一致）で顧客を検索する（大文字・小文字、声調記号は区別しない）。
+     * 完全一致 → 前方一致 → 単語の前方一致 → 部分一致 の順に並べて返す。
+     * 氏名索引は銀行のロックを使わないため、登録処理と並行して検索できる。
      *
      * @param name 氏名キーワード
      * @return 条件に一致した顧客リスト
      */
     public List<Customer> searchCustomersByName(String name) {
-        List<Customer> result = new ArrayList<>();
-        for (Customer customer : customers) {
-            if (customer.getName().toLowerCase().contains(name.toLowerCase())) {
-                result.add(customer);
-            }
-        }
-        return result;
+        return nameIndex.search(name, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 氏名（部分一致）で顧客を検索し、指定したページ分だけ返す。
+     *
+     * @param name   氏名キーワード
+     * @param offset 読み飛ばす件数（0 始まり）
+     * @param limit  1ページの最大件数
+     * @return 条件に一致した顧客リスト（一致度順）
+     */
+    public List<Customer> searchCustomersByName(String name, int offset, int limit) {
+        return nameIndex.search(name, offset, limit);
+    }
+
+    /**
+     * 呼び出し時点の顧客リストのコピーを返す（登録順）。
+     * 顧客の登録と並行して全件を処理する場合（スナップショット・集計など）に使う。
+     */
+    public synchronized List<Customer> copyCustomers() {
+        return new ArrayList<>(customers);
     }
 
     /**
-     * 全ての顧客リストを返す。
+     * 全ての顧客リストを返す（登録順・読み取り専用）。
+     * 並べ替えたい場合はコピーしてから行うこと。
+     * 顧客の登録と並行して反復する場合は、呼び出し側で登録処理と調整すること。
      */
     public List<Customer> getCustomers() {
-        return customers;
+        return Collections.unmodifiableList(customers);
     }
 }
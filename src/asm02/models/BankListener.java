@@ -0,0 +1,25 @@
+package asm02.models;
+
+/**
+ * 銀行の登録内容の変更を受け取るリスナー。
+ * 永続化（変更ログの書き出しなど）のために利用する。
+ * 呼び出しは銀行単位で直列化されており、顧客の登録は必ずその顧客の口座の登録より先に通知される。
+ * 登録の通知は顧客・口座が銀行の索引に公開される前に行われるため、その口座の取引より後になることはない。
+ */
+public interface BankListener {
+
+    /**
+     * 顧客が登録されたときに呼び出される（保有済みの口座は続けて onAccountAdded で通知される）。
+     */
+    void onCustomerAdded(Customer customer);
+
+    /**
+     * 登録済みの顧客に口座が追加されたときに呼び出される。
+     */
+    void onAccountAdded(Customer owner, Account account);
+
+    /**
+     * 登録済みの顧客の氏名が変更されたときに呼び出される。
+     */
+    void onCustomerRenamed(Customer customer);
+}
@@ -0,0 +1,247 @@
+package asm02.models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 銀行全体の顧客レポート。
+ * 顧客一覧を fork-join で分割し、各部分で顧客ごとの行の整形と集計を同時に行ってから結合する。
+ * <ul>
+ *   <li>顧客ごと：個人番号・氏名・区分・総残高・口座数（整形済みの行）</li>
+ *   <li>顧客区分ごと：顧客数と総残高（NORMAL / PREMIUM）</li>
+ *   <li>口座区分ごと：口座数と残高合計（預金・ローン × NORMAL / PREMIUM）</li>
+ * </ul>
+ * 整形済みの行は部分ごとのまとまり（チャンク）として保持し、結合時はチャンクの一覧をつなぐだけにする
+ * （行の文字列を結合のたびにコピーしない）。
+ */
+public final class BankReport {
+
+    /**
+     * 口座の集計区分
+     */
+    public enum Category {
+        DEPOSIT_NORMAL("預金 NORMAL"),
+        DEPOSIT_PREMIUM("預金 PREMIUM"),
+        LOAN_NORMAL("ローン NORMAL"),
+        LOAN_PREMIUM("ローン PREMIUM");
+
+        private final String label;
+
+        Category(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        static Category of(Account account) {
+            if (account.isLiability()) {
+                return account.isPremium() ? LOAN_PREMIUM : LOAN_NORMAL;
+            }
+            return account.isPremium() ? DEPOSIT_PREMIUM : DEPOSIT_NORMAL;
+        }
+    }
+
+    // 1つの部分を逐次処理する顧客数の上限
+    private static final int THRESHOLD = 2_048;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private long customers;
+    private long premiumCustomers;
+    private long normalCustomerBalance;
+    private long premiumCustomerBalance;
+    private final long[] accountCounts = new long[Category.values().length];
+    private final long[] accountBalances = new long[Category.values().length];
+    // 顧客ごとの整形済みの行（部分ごとのチャンク。レポートの並び順）
+    private final List<CharSequence> lineChunks = new ArrayList<>();
+
+    private BankReport() {
+    }
+
+    /**
+     * 顧客一覧を登録順でレポートにする。
+     */
+    public static BankReport generate(Bank bank) {
+        return generate(bank, null);
+    }
+
+    /**
+     * 顧客一覧を指定した順番でレポートにする。
+     * 並べ替えも {@link Arrays#parallelSort} で複数スレッドで行う。
+     *
+     * @param order 並び順（null の場合は登録順）
+     */
+    public static BankReport generate(Bank bank, Comparator<? super Customer> order) {
+        Customer[] customers = bank.copyCustomers().toArray(new Customer[0]);
+        if (order != null) {
+            Arrays.parallelSort(customers, order);
+        }
+        return ForkJoinPool.commonPool().invoke(new Task(customers, 0, customers.length));
+    }
+
+    /**
+     * 顧客一覧の一部を処理するタスク。
+     * 顧客数が閾値以下になるまで半分に分割し、結果は左 → 右の順に結合する。
+     */
+    private static final class Task extends RecursiveTask<BankReport> {
+        private static final long serialVersionUID = 1L;
+
+        private final Customer[] customers;
+        private final int from;
+        private final int to;
+
+        Task(Customer[] customers, int from, int to) {
+            this.customers = customers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BankReport compute() {
+            if (to - from <= THRESHOLD) {
+                return summarize(customers, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            Task left = new Task(customers, from, middle);
+            Task right = new Task(customers, middle, to);
+            right.fork();
+            BankReport result = left.compute();
+            result.merge(right.join());
+            return result;
+        }
+    }
+
+    /**
+     * 顧客一覧の一部を逐次処理する。
+     */
+    private static BankReport summarize(Customer[] customers, int from, int to) {
+        BankReport report = new BankReport();
+        StringBuilder lines = new StringBuilder((to - from) * 80);
+        for (int i = from; i < to; i++) {
+            Customer customer = customers[i];
+            List<Account> accounts = customer.copyAccounts();
+            boolean premium = customer.isPremiumCustomer();
+            long totalBalance = customer.getTotalBalance();
+
+            report.customers++;
+            if (premium) {
+                report.premiumCustomers++;
+                report.premiumCustomerBalance += totalBalance;
+            } else {
+                report.normalCustomerBalance += totalBalance;
+            }
+            for (Account account : accounts) {
+                int category = Category.of(account).ordinal();
+                report.accountCounts[category]++;
+                report.accountBalances[category] += account.getBalance();
+            }
+            // "%4d | %-12s | %-20s | %-8s | %15s | %5d%n" と同じ形式（Formatter より軽い）
+            padLeft(lines, Integer.toString(i + 1), 4).append(" | ");
+            padRight(lines, customer.getCustomerId(), 12).append(" | ");
+            padRight(lines, customer.getName(), 20).append(" | ");
+            padRight(lines, premium ? "PREMIUM" : "NORMAL", 8).append(" | ");
+            padLeft(lines, Money.format(totalBalance), 15).append(" | ");
+            padLeft(lines, Integer.toString(accounts.size()), 5).append(LINE_SEPARATOR);
+        }
+        report.lineChunks.add(lines);
+        return report;
+    }
+
+    private static StringBuilder padLeft(StringBuilder out, String value, int width) {
+        for (int i = value.length(); i < width; i++) {
+            out.append(' ');
+        }
+        return out.append(value);
+    }
+
+    private static StringBuilder padRight(StringBuilder out, String value, int width) {
+        out.append(value);
+        for (int i = value.length(); i < width; i++) {
+            out.append(' ');
+        }
+        return out;
+    }
+
+    /**
+     * 右側（後ろ）の部分の結果を結合する。
+     */
+    private void merge(BankReport other) {
+        customers += other.customers;
+        premiumCustomers += other.premiumCustomers;
+        normalCustomerBalance += other.normalCustomerBalance;
+        premiumCustomerBalance += other.premiumCustomerBalance;
+        for (int i = 0; i < accountCounts.length; i++) {
+            accountCounts[i] += other.accountCounts[i];
+            accountBalances[i] += other.accountBalances[i];
+        }
+        lineChunks.addAll(other.lineChunks);
+    }
+
+    /* ======================= 結果の取得 ======================= */
+
+    /**
+     * 顧客ごとの行（整形済み、レポートの並び順）を出力する。
+     */
+    public void writeLinesTo(Appendable out) {
+        try {
+            for (CharSequence chunk : lineChunks) {
+                out.append(chunk);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getCustomerCount() {
+        return customers;
+    }
+
+    public long getPremiumCustomerCount() {
+        return premiumCustomers;
+    }
+
+    public long getNormalCustomerCount() {
+        return customers - premiumCustomers;
+    }
+
+    public long getPremiumCustomerBalance() {
+        return premiumCustomerBalance;
+    }
+
+    public long getNormalCustomerBalance() {
+        return normalCustomerBalance;
+    }
+
+    public long getAccountCount(Category category) {
+        return accountCounts[category.ordinal()];
+    }
+
+    public long getAccountBalance(Category category) {
+        return accountBalances[category.ordinal()];
+    }
+
+    /**
+     * 集計部分を整形して返す。
+     */
+    public String formatSummary() {
+        StringBuilder out = new StringBuilder(512);
+        out.append(String.format("%-14s | %10s | %18s%n", "区分", "件数", "残高合計"));
+        out.append(String.format("%-14s | %,10d | %18s%n", "顧客 NORMAL",
+                getNormalCustomerCount(), Money.format(normalCustomerBalance)));
+        out.append(String.format("%-14s | %,10d | %18s%n", "顧客 PREMIUM",
+                premiumCustomers, Money.format(premiumCustomerBalance)));
+        for (Category category : Category.values()) {
+            out.append(String.format("%-14s | %,10d | %18s%n", category.getLabel(),
+                    getAccountCount(category), Money.format(getAccountBalance(category))));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,237 @@
+package asm02.models;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 個人番号（ベトナム国民識別番号・12桁）の検証と解析。
+ * <pre>
+ *   1〜3桁目 : 省コード
+ *   4桁目    : 性別・世紀コード（偶数=男性 / 奇数=女性、0-1=1900年代 … 8-9=2300年代）
+ *   5〜6桁目 : 生年の下2桁
+ *   7〜12桁目: 個人識別コード
+ * </pre>
+ * 正規表現や文字列の切り出しを使わず、先頭から1回走査するだけで検証と解析を同時に行う。
+ * 結果は int 1つにまとめて返すため、解析時にオブジェクトを生成しない。
+ * <pre>
+ *   bit 0-5  : 省のインデックス（0〜62）
+ *   bit 6    : 性別（0=男性 / 1=女性）
+ *   bit 7-9  : 世紀（0=1900年代 … 4=2300年代）
+ *   bit 10-16: 生年の下2桁
+ * </pre>
+ * 無効な番号の場合は負の値（{@link #INVALID_FORMAT} / {@link #INVALID_PROVINCE}）を返す。
+ */
+public final class CitizenIdDecoder {
+
+    /** 12桁の数字ではない */
+    public static final int INVALID_FORMAT = -1;
+    /** 省コードが存在しない */
+    public static final int INVALID_PROVINCE = -2;
+
+    /** 個人番号の桁数 */
+    public static final int LENGTH = 12;
+
+    private static final int GENDER_SHIFT = 6;
+    private static final int CENTURY_SHIFT = 7;
+    private static final int YEAR_SHIFT = 10;
+
+    // 省コードと省名（インデックスが対応）
+    private static final int[] PROVINCE_CODES = {
+            1, 2, 4, 6, 8, 10, 11, 12, 14, 15,
+            17, 19, 20, 22, 24, 25, 26, 27, 30, 31,
+            33, 34, 35, 36, 37, 38, 40, 42, 44, 45,
+            46, 48, 49, 51, 52, 54, 56, 58, 60, 62,
+            64, 66, 67, 68, 70, 72, 74, 75, 77, 79,
+            80, 82, 83, 84, 86, 87, 89, 91, 92, 93,
+            94, 95, 96
+    };
+    private static final String[] PROVINCE_NAMES = {
+            "Hà Nội", "Hà Giang", "Cao Bằng", "Bắc Kạn", "Tuyên Quang",
+            "Lào Cai", "Điện Biên", "Lai Châu", "Sơn La", "Yên Bái",
+            "Hoà Bình", "Thái Nguyên", "Lạng Sơn", "Quảng Ninh", "Bắc Giang",
+            "Phú Thọ", "Vĩnh Phúc", "Bắc Ninh", "Hải Dương", "Hải Phòng",
+            "Hưng Yên", "Thái Bình", "Hà Nam", "Nam Định", "Ninh Bình",
+            "Thanh Hoá", "Nghệ An", "Hà Tĩnh", "Quảng Bình", "Quảng Trị",
+            "Thừa Thiên Huế", "Đà Nẵng", "Quảng Nam", "Quảng Ngãi", "Bình Định",
+            "Phú Yên", "Khánh Hoà", "Ninh Thuận", "Bình Thuận", "Kon Tum",
+            "Gia Lai", "Đắk Lắk", "Đắk Nông", "Lâm Đồng", "Bình Phước",
+            "Tây Ninh", "Bình Dương", "Đồng Nai", "Bà Rịa - Vũng Tàu", "TP. Hồ Chí Minh",
+            "Long An", "Tiền Giang", "Bến Tre", "Trà Vinh", "Vĩnh Long",
+            "Đồng Tháp", "An Giang", "Kiên Giang", "Cần Thơ", "Hậu Giang",
+            "Sóc Trăng", "Bạc Liêu", "Cà Mau"
+    };
+
+    // 省コード(0〜999) → 省のインデックス。存在しないコードは -1
+    private static final byte[] PROVINCE_INDEX = new byte[1000];
+
+    static {
+        Arrays.fill(PROVINCE_INDEX, (byte) -1);
+        for (int i = 0; i < PROVINCE_CODES.length; i++) {
+            PROVINCE_INDEX[PROVINCE_CODES[i]] = (byte) i;
+        }
+    }
+
+    private CitizenIdDecoder() {
+    }
+
+    /* ======================= 解析 ======================= */
+
+    /**
+     * 個人番号を検証・解析する。
+     *
+     * @return 解析結果（無効な場合は負の値）
+     */
+    public static int decode(CharSequence id) {
+        if (id == null || id.length() != LENGTH) return INVALID_FORMAT;
+        int province = 0;
+        int genderCentury = 0;
+        int year = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            int digit = id.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return INVALID_FORMAT;
+            if (i < 3) {
+                province = province * 10 + digit;
+            } else if (i == 3) {
+                genderCentury = digit;
+            } else if (i < 6) {
+                year = year * 10 + digit;
+            }
+        }
+        return pack(province, genderCentury, year);
+    }
+
+    /**
+     * ASCII の数字が12バイトずつ連続して並んだ配列から1件を解析する（ファイルからの一括処理用）。
+     *
+     * @param digits 入力バイト列
+     * @param offset 個人番号の先頭位置
+     * @return 解析結果（無効な場合は負の値）
+     */
+    public static int decode(byte[] digits, int offset) {
+        int province = 0;
+        int genderCentury = 0;
+        int year = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            int digit = digits[offset + i] - '0';
+            if (digit < 0 || digit > 9) return INVALID_FORMAT;
+            if (i < 3) {
+                province = province * 10 + digit;
+            } else if (i == 3) {
+                genderCentury = digit;
+            } else if (i < 6) {
+                year = year * 10 + digit;
+            }
+        }
+        return pack(province, genderCentury, year);
+    }
+
+    private static int pack(int province, int genderCentury, int year) {
+        int index = PROVINCE_INDEX[province];
+        if (index < 0) return INVALID_PROVINCE;
+        return index
+                | (genderCentury & 1) << GENDER_SHIFT
+                | (genderCentury >> 1) << CENTURY_SHIFT
+                | year << YEAR_SHIFT;
+    }
+
+    /**
+     * 個人番号が有効かどうか（12桁の数字で、省コードが存在する）
+     */
+    public static boolean isValid(CharSequence id) {
+        return decode(id) >= 0;
+    }
+
+    /* ======================= 一括解析 ======================= */
+
+    /**
+     * 複数の個人番号をまとめて解析する。
+     *
+     * @param ids 個人番号
+     * @param out 解析結果の格納先（ids と同じ順番。ids.size() 以上の長さが必要）
+     * @return 有効だった件数
+     */
+    public static int decodeAll(List<? extends CharSequence> ids, int[] out) {
+        int size = ids.size();
+        if (out.length < size) {
+            throw new IllegalArgumentException("結果の格納先が足りません。");
+        }
+        int valid = 0;
+        for (int i = 0; i < size; i++) {
+            int packed = decode(ids.get(i));
+            out[i] = packed;
+            if (packed >= 0) valid++;
+        }
+        return valid;
+    }
+
+    /**
+     * 12バイト固定長で連続して並んだ個人番号をまとめて解析する。
+     * 文字列を生成せずに済むため、ファイルから読み込んだ大量の番号の処理に向いている。
+     *
+     * @param digits 入力バイト列（ASCII の数字）
+     * @param offset 最初の個人番号の位置
+     * @param stride 個人番号同士の間隔（改行などの区切りを含む。12以上）
+     * @param count  件数
+     * @param out    解析結果の格納先
+     * @return 有効だった件数
+     */
+    public static int decodeAll(byte[] digits, int offset, int stride, int count, int[] out) {
+        if (stride < LENGTH) {
+            throw new IllegalArgumentException("間隔は" + LENGTH + "以上でなければなりません。");
+        }
+        if (out.length < count || offset + (long) stride * (count - 1) + LENGTH > digits.length) {
+            throw new IllegalArgumentException("入力または結果の格納先が足りません。");
+        }
+        int valid = 0;
+        for (int i = 0, position = offset; i < count; i++, position += stride) {
+            int packed = decode(digits, position);
+            out[i] = packed;
+            if (packed >= 0) valid++;
+        }
+        return valid;
+    }
+
+    /* ======================= 解析結果の取り出し ======================= */
+
+    public static int provinceIndex(int packed) {
+        return packed & 0x3F;
+    }
+
+    /**
+     * 省コード（例: 1 = "001"）
+     */
+    public static int provinceCode(int packed) {
+        return PROVINCE_CODES[provinceIndex(packed)];
+    }
+
+    public static String provinceName(int packed) {
+        return PROVINCE_NAMES[provinceIndex(packed)];
+    }
+
+    public static boolean isFemale(int packed) {
+        return (packed >> GENDER_SHIFT & 1) != 0;
+    }
+
+    /**
+     * 生年（例: 2005）
+     */
+    public static int birthYear(int packed) {
+        int century = packed >> CENTURY_SHIFT & 0x7;
+        int year = packed >> YEAR_SHIFT & 0x7F;
+        return 1900 + century * 100 + year;
+    }
+
+    /**
+     * index 番目（0 始まり）の省コード（テストデータの生成などに使う）
+     */
+    public static int provinceCodeAt(int index) {
+        return PROVINCE_CODES[index];
+    }
+
+    /**
+     * 登録されている省の数
+     */
+    public static int provinceCount() {
+        return PROVINCE_CODES.length;
+    }
+}
@@ -1,7 +1,13 @@
 package asm02.models;
 
 import java.util.ArrayList;
+import java.util.Formatter;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 顧客クラス
@@ -12,12 +18,25 @@ public class Customer extends User {
     // 顧客が保有している口座リスト
     private final List<Account> accounts;
 
+    // 口座番号 → 口座 の索引（出金処理などからロックなしで参照される）
+    private final Map<String, Account> accountsByNumber;
+
+    // 顧客が登録されている銀行（未登録の場合は null）
+    private volatile Bank bank;
+
+    // 全口座の合計残高（口座の残高が変わるたびに差額を加算する）
+    private final AtomicLong totalBalance = new AtomicLong();
+
+    // プレミアム口座の数
+    private final AtomicInteger premiumAccounts = new AtomicInteger();
+
     /**
      * コンストラクタ：氏名と個人番号を受け取り、口座リストを初期化する
      */
     public Customer(String name, String customerId) {
         super(name, customerId);
         this.accounts = new ArrayList<>();
+        this.accountsByNumber = new ConcurrentHashMap<>();
     }
 
     /**
@@ -27,38 +46,115 @@ public class Customer extends User {
         return accounts;
     }
 
+    /**
+     * 呼び出し時点の口座リストのコピーを返す。
+     * 口座の追加と並行して全件を処理する場合に使う。
+     */
+    public synchronized List<Account> copyAccounts() {
+        return new ArrayList<>(accounts);
+    }
+
+    /**
+     * 顧客が登録されている銀行を設定する。Bank.addCustomer から呼び出される。
+     */
+    void attachTo(Bank bank) {
+        this.bank = bank;
+    }
+
+    /**
+     * 氏名が変更されたら、銀行の氏名索引を更新する。
+     */
+    @Override
+    protected void onNameChanged(String oldName) {
+        if (bank != null) {
+            bank.customerRenamed(this);
+        }
+    }
+
+    /**
+     * 顧客が登録されている銀行を返す（未登録の場合は null）。
+     */
+    public Bank getBank() {
+        return bank;
+    }
+
     /**
      * 口座を追加する
      * - nullは不可
      * - すでに同じ口座番号が存在する場合は追加しない
+     * - 銀行に登録済みの顧客の場合、銀行全体の口座索引にも登録する（他の顧客と重複する場合は追加しない）
      *
      * @param account 追加する口座
      * @return 追加成功なら true、失敗なら false
      */
-    public boolean addAccount(Account account) {
+    public synchronized boolean addAccount(Account account) {
         if (account == null) {
             return false;
         }
 
         // 口座番号の重複チェック
-        for (Account existing : accounts) {
-            if (existing.getAccountNumber().equals(account.getAccountNumber())) {
-                return false;
-            }
+        if (accountsByNumber.containsKey(account.getAccountNumber())) {
+            return false;
         }
+        if (bank != null && !bank.registerAccount(this, account)) {
+            return false;
+        }
+        accountsByNumber.put(account.getAccountNumber(), account);
         accounts.add(account);
+
+        // 口座のロック内で保有者を設定し、現在の残高を集計値に加える
+        // （ロック内で行うため、同時に出金されても差額の通知と二重に数えない）
+        ReentrantLock lock = account.getLock();
+        lock.lock();
+        try {
+            account.attachTo(this);
+            balanceChanged(account, account.getBalance(), false, account.isPremium());
+        } finally {
+            lock.unlock();
+        }
         return true;
     }
 
     /**
-     * 全口座の合計残高を取得する
+     * 口座の残高が変わったときに集計値を更新し、銀行に通知する。
+     * Account.setBalance から口座のロック内で呼び出される。
+     *
+     * @param delta      残高の差額
+     * @param wasPremium 変更前にプレミアム口座だったか
+     * @param isPremium  変更後にプレミアム口座か
      */
-    public double getTotalBalance() {
-        double sum = 0;
-        for (Account acc : accounts) {
-            sum += acc.getBalance();
+    void balanceChanged(Account account, long delta, boolean wasPremium, boolean isPremium) {
+        totalBalance.addAndGet(delta);
+        int premiumAccountDelta = 0;
+        int premiumCustomerDelta = 0;
+        if (wasPremium != isPremium) {
+            premiumAccountDelta = isPremium ? 1 : -1;
+            int after = premiumAccounts.addAndGet(premiumAccountDelta);
+            if (isPremium && after == 1) {
+                premiumCustomerDelta = 1;         // プレミアム顧客になった
+            } else if (!isPremium && after == 0) {
+                premiumCustomerDelta = -1;        // プレミアム顧客ではなくなった
+            }
         }
-        return sum;
+        Bank current = bank;
+        if (current != null) {
+            current.balanceChanged(account, delta, premiumAccountDelta, premiumCustomerDelta);
+        }
+    }
+
+    /**
+     * 全口座の合計残高を取得する（最小単位）
+     * 残高の変更時に更新される集計値を返すため O(1)。
+     */
+    public long getTotalBalance() {
+        return totalBalance.get();
+    }
+
+    /**
+     * プレミアム口座の数を返す。
+     */
+    public int getPremiumAccountCount() {
+        return premiumAccounts.get();
     }
 
     /**
@@ -66,12 +162,7 @@ public class Customer extends User {
      * - 少なくとも1つのプレミアム口座を持っていればプレミアム顧客
      */
     public boolean isPremiumCustomer() {
-        for (Account acc : accounts) {
-            if (acc.isPremium()) {
-                return true;
-            }
-        }
-        return false;
+        return premiumAccounts.get() > 0;
     }
 
     /**
@@ -80,32 +171,43 @@ public class Customer extends User {
      * 2. 口座情報：口座番号・口座区分・残高
      */
     public void displayInformation() {
+        System.out.print(formatInformation());
+    }
+
+    /**
+     * displayInformation の表示内容を文字列で返す（画面への書き込みは1回で済む）。
+     */
+    public String formatInformation() {
+        List<Account> snapshot = copyAccounts();
         String customerType = isPremiumCustomer() ? "PREMIUM" : "NORMAL";
+        StringBuilder text = new StringBuilder(256 + snapshot.size() * 48);
+        Formatter out = new Formatter(text);
 
         // 1. 顧客情報
-        System.out.println("=========== 顧客情報 ===========");
-        System.out.printf("個人番号　　: %s%n", getCustomerId());
-        System.out.printf("氏名       : %s%n", getName());
-        System.out.printf("顧客区分    : %s%n", customerType);
-        System.out.printf("総残高     : %,15.2f%n", getTotalBalance());
+        out.format("=========== 顧客情報 ===========%n");
+        out.format("個人番号　　: %s%n", getCustomerId());
+        out.format("氏名       : %s%n", getName());
+        out.format("顧客区分    : %s%n", customerType);
+        out.format("総残高     : %15s%n", Money.format(getTotalBalance()));
 
         // 2. 口座情報
-        System.out.println("----------- 口座一覧 -----------");
-        if (accounts.isEmpty()) {
-            System.out.println("口座はまだ登録されていません。");
+        out.format("----------- 口座一覧 -----------%n");
+        if (snapshot.isEmpty()) {
+            out.format("口座はまだ登録されていません。%n");
         } else {
-            System.out.printf("%-10s | %-8s | %15s%n", "口座番号", "区分", "残高");
-            System.out.println("--------------------------------");
-            for (Account acc : accounts) {
-                System.out.printf(
-                        "%-10s | %-8s | %,15.2f%n",
+            out.format("%-10s | %-8s | %15s%n", "口座番号", "区分", "残高");
+            out.format("--------------------------------%n");
+            for (Account acc : snapshot) {
+                out.format(
+                        "%-10s | %-8s | %15s%n",
                         acc.getAccountNumber(),
                         acc.getAccountType(),   // "PREMIUM" または "NORMAL"
-                        acc.getBalance()
+                        Money.format(acc.getBalance())
                 );
             }
         }
-        System.out.println(); // 空行
+        out.format("%n"); // 空行
+        return text.toString();
     }
 
     /**
@@ -116,12 +218,7 @@ public class Customer extends User {
      */
     public Account findAccountByNumber(String accountNumber) {
         if (accountNumber == null) return null;
-        for (Account account : accounts) {
-            if (accountNumber.equals(account.getAccountNumber())) {
-                return account;
-            }
-        }
-        return null;
+        return accountsByNumber.get(accountNumber);
     }
 
 }
@@ -0,0 +1,329 @@
+package asm02.models;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 顧客氏名の検索用索引（2〜3文字 n-gram 索引）。
+ * - 氏名は登録時に正規化（小文字化・ベトナム語の声調記号などを除去）して保持する
+ * - キーワードを含む n-gram の転置リストから候補を絞り込み、部分一致を確認する
+ *   （1文字のキーワードは、その文字を含む2文字の n-gram の転置リストを合わせて候補にする）
+ * - 候補が多すぎる場合は、氏名順の索引を先頭から確認し、offset + limit 件がそろった時点で打ち切る。
+ *   切り替えの基準は √(必要な件数 × 全要素数)：候補の確認と氏名順の確認のどちらも、処理する件数がこの程度に収まる。
+ *   この場合、完全一致・前方一致より後は単語の前方一致と部分一致を区別せず氏名順に並べる
+ * - 結果は offset + limit 件だけを保持するヒープで選ぶ（一致した全件は並べ替えない）
+ * - 一括登録された顧客は検索時までまとめて索引化を遅らせる（登録処理を軽くするため）
+ * 検索はロックなしで行い、追加・更新はこの索引のロックで直列化する。
+ * 氏名の変更中に検索した場合は、変更前・変更後のどちらか一方の氏名で一致を判定する。
+ * Bank からのみ利用する。
+ */
+final class CustomerNameIndex {
+
+    private static final int MIN_GRAM = 2;
+    private static final int MAX_GRAM = 3;
+
+
+    /**
+     * 索引の1要素：顧客と正規化済みの氏名
+     */
+    private record Entry(Customer customer, String normalizedName) {
+    }
+
+    // 氏名順（同じ氏名は個人番号順。顧客のない要素は範囲検索の境界として同じ氏名の先頭に置く）
+    private static final Comparator<Entry> BY_NAME = Comparator
+            .comparing(Entry::normalizedName)
+            .thenComparing(e -> e.customer() == null ? null : e.customer().getCustomerId(),
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    // 一致の度合いでの並び順：完全一致 → 前方一致 → 単語の前方一致 → 部分一致、同順位は氏名・個人番号順
+    private static final Comparator<Ranked> RANKING = Comparator
+            .comparingInt(Ranked::rank)
+            .thenComparing(Ranked::entry, BY_NAME);
+
+    private record Ranked(Entry entry, int rank) {
+    }
+
+    // 個人番号 → 索引の要素（最新の要素。転置リストに残っている古い要素はこれと比べて除外する）
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // n-gram → その n-gram を含む要素
+    private final Map<Long, Set<Entry>> postings = new ConcurrentHashMap<>();
+
+    // 全要素の氏名順の索引（前方一致の範囲検索と、候補が多い場合の確認用）
+    private final NavigableSet<Entry> byName = new ConcurrentSkipListSet<>(BY_NAME);
+
+    // 索引化を遅らせている顧客（一括登録分。この索引のロックで保護する）
+    private final List<Customer> pending = new ArrayList<>();
+    private volatile boolean hasPending;
+
+    /**
+     * 顧客を索引に追加する。
+     */
+    synchronized void add(Customer customer) {
+        String normalizedName = normalize(customer.getName());
+        Entry current = entries.get(customer.getCustomerId());
+        if (current != null && current.normalizedName().equals(normalizedName)) {
+            return;   // 正規化後の氏名が変わらない場合は索引もそのまま
+        }
+        Entry entry = new Entry(customer, normalizedName);
+        // 転置リストに載せてから最新の要素として公開し、その後で古い要素を取り除く
+        forEachGram(entry.normalizedName(), gram ->
+                postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(entry));
+        byName.add(entry);
+        Entry previous = entries.put(customer.getCustomerId(), entry);
+        if (previous != null) {
+            unindex(previous);
+        }
+    }
+
+    /**
+     * 顧客を、次の検索時に索引化する対象として登録する（一括登録用）。
+     */
+    synchronized void addLater(Customer customer) {
+        pending.add(customer);
+        hasPending = true;
+    }
+
+    /**
+     * 顧客の氏名が変更されたときに索引を更新する。
+     */
+    synchronized void update(Customer customer) {
+        drainPending();
+        add(customer);
+    }
+
+    private synchronized void drainPending() {
+        if (pending.isEmpty()) return;
+        for (Customer customer : pending) {
+            add(customer);
+        }
+        pending.clear();
+        hasPending = false;
+    }
+
+    private void unindex(Entry entry) {
+        byName.remove(entry);
+        forEachGram(entry.normalizedName(), gram -> {
+            Set<Entry> posting = postings.get(gram);
+            if (posting != null) {
+                posting.remove(entry);
+                if (posting.isEmpty()) {
+                    postings.remove(gram, posting);
+                }
+            }
+        });
+    }
+
+    /**
+     * 要素が顧客の最新の要素かどうか（氏名変更前の要素を除外する）。
+     */
+    private boolean isCurrent(Entry entry) {
+        return entries.get(entry.customer().getCustomerId()) == entry;
+    }
+
+    /**
+     * キーワードに部分一致する顧客を、一致度順に並べて返す。
+     *
+     * @param keyword キーワード（大文字・小文字、声調記号は区別しない）
+     * @param offset  読み飛ばす件数
+     * @param limit   返す最大件数
+     * @return 条件に一致した顧客リスト
+     */
+    List<Customer> search(String keyword, int offset, int limit) {
+        if (hasPending) {
+            drainPending();
+        }
+        String query = normalize(keyword);
+        if (query.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        int from = Math.max(offset, 0);
+        int needed = (int) Math.min((long) from + limit, Integer.MAX_VALUE);
+
+        // 候補が多い場合（短いキーワードなど）は、氏名順に確認して needed 件で打ち切る方が速い。
+        // 氏名順の確認で読む件数はおよそ needed × 全要素数 / 候補数のため、候補数がその値と釣り合う点で切り替える
+        long denseThreshold = (long) Math.sqrt((double) needed * entries.size());
+        Set<Entry> candidates = query.length() < MIN_GRAM
+                ? singleCharCandidates(query, denseThreshold)
+                : candidates(query);
+        List<Ranked> top = candidates == null || candidates.size() > denseThreshold
+                ? scanByName(query, needed)
+                : selectTop(candidates, query, needed);
+
+        int to = Math.min(needed, top.size());
+        List<Customer> result = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = from; i < to; i++) {
+            result.add(top.get(i).entry().customer());
+        }
+        return result;
+    }
+
+    /**
+     * 候補のうち一致度順で上位 needed 件を選び、並べて返す。
+     * 最大ヒープに needed 件だけを保持し、それより下位の候補は捨てる。
+     */
+    private List<Ranked> selectTop(Set<Entry> candidates, String query, int needed) {
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(RANKING.reversed());
+        for (Entry entry : candidates) {
+            int rank = rank(entry.normalizedName(), query);
+            if (rank < 0 || !isCurrent(entry)) continue;
+            Ranked ranked = new Ranked(entry, rank);
+            if (heap.size() < needed) {
+                heap.add(ranked);
+            } else if (RANKING.compare(ranked, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(ranked);
+            }
+        }
+        List<Ranked> top = new ArrayList<>(heap);
+        top.sort(RANKING);
+        return top;
+    }
+
+    /**
+     * キーワードを氏名順の索引から検索する（候補が多い場合）。
+     * 完全一致・前方一致は氏名順の範囲としてそのまま取り出せる。残り（単語の前方一致・部分一致）は
+     * 氏名順に確認し、needed 件がそろった時点で打ち切る。
+     * 結果は needed に関わらず同じ並びの先頭部分になるため、offset をずらしたページ同士で重複・欠落しない。
+     */
+    private List<Ranked> scanByName(String query, int needed) {
+        List<Ranked> top = new ArrayList<>();
+        Entry low = new Entry(null, query);
+        Entry high = new Entry(null, query + Character.MAX_VALUE);
+        for (Entry entry : byName.subSet(low, true, high, false)) {
+            if (top.size() >= needed) return top;
+            if (isCurrent(entry)) {
+                top.add(new Ranked(entry, rank(entry.normalizedName(), query)));
+            }
+        }
+        for (Entry entry : byName) {
+            if (top.size() >= needed) break;
+            int rank = rank(entry.normalizedName(), query);
+            if (rank < 2 || !isCurrent(entry)) continue;   // 不一致、または前方一致（取得済み）
+            top.add(new Ranked(entry, rank));
+        }
+        return top;
+    }
+
+    /**
+     * 1文字のキーワードの候補を返す。
+     * その文字を含む2文字の n-gram の転置リストと、氏名がその1文字だけの要素を合わせる。
+     * 候補が limit 件を超える場合は、集めずに null を返す（氏名順の確認に切り替える）。
+     */
+    private Set<Entry> singleCharCandidates(String query, long limit) {
+        char c = query.charAt(0);
+        List<Set<Entry>> matching = new ArrayList<>();
+        long total = 0;
+        for (Map.Entry<Long, Set<Entry>> posting : postings.entrySet()) {
+            long gram = posting.getKey();
+            if (gram >>> 32 != MIN_GRAM) continue;
+            if ((char) (gram >>> 16) != c && (char) gram != c) continue;
+            matching.add(posting.getValue());
+            total += posting.getValue().size();
+            if (total > limit) {
+                return null;
+            }
+        }
+        Set<Entry> candidates = new HashSet<>();
+        for (Set<Entry> posting : matching) {
+            candidates.addAll(posting);
+        }
+        candidates.addAll(byName.subSet(new Entry(null, query), true, new Entry(null, query + '\0'), false));
+        return candidates;
+    }
+
+    /**
+     * 候補となる要素を返す。
+     * キーワード内で最も出現数の少ない n-gram（3文字、キーワードが2文字の場合は2文字）の転置リストを使う。
+     */
+    private Set<Entry> candidates(String query) {
+        int length = Math.min(query.length(), MAX_GRAM);
+        Set<Entry> smallest = null;
+        for (int i = 0; i + length <= query.length(); i++) {
+            Set<Entry> posting = postings.get(gramAt(query, i, length));
+            if (posting == null) {
+                return Set.of();
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * 一致度を返す（0：完全一致、1：前方一致、2：単語の前方一致、3：部分一致、-1：不一致）
+     */
+    private static int rank(String name, String query) {
+        int index = name.indexOf(query);
+        if (index < 0) return -1;
+        if (index == 0) return name.length() == query.length() ? 0 : 1;
+        if (name.charAt(index - 1) == ' ') return 2;
+        // 最初に見つかった位置が単語の途中でも、後ろに単語の先頭で一致する箇所があるか確認する
+        return name.contains(" " + query) ? 2 : 3;
+    }
+
+    private interface GramConsumer {
+        void accept(long gram);
+    }
+
+    private static void forEachGram(String text, GramConsumer consumer) {
+        for (int length = MIN_GRAM; length <= MAX_GRAM; length++) {
+            for (int i = 0; i + length <= text.length(); i++) {
+                consumer.accept(gramAt(text, i, length));
+            }
+        }
+    }
+
+    /**
+     * text[index..index+length) の n-gram のキー（文字を16ビットずつ詰め、上位に長さを入れる）
+     */
+    private static long gramAt(String text, int index, int length) {
+        long gram = length;
+        for (int i = 0; i < length; i++) {
+            gram = (gram << 16) | text.charAt(index + i);
+        }
+        return gram;
+    }
+
+    /**
+     * 氏名を検索用に正規化する。
+     * - 声調記号などの結合文字を除去（"Nguyễn" → "nguyen"）
+     * - "đ"/"Đ" は "d" に置き換える
+     * - 小文字化し、連続する空白を1つにまとめ、前後の空白を除く
+     */
+    static String normalize(String name) {
+        if (name == null) return "";
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder builder = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = builder.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                builder.append(' ');
+                pendingSpace = false;
+            }
+            if (c == 'đ' || c == 'Đ') {
+                c = 'd';
+            }
+            builder.append(Character.toLowerCase(c));
+        }
+        return builder.toString();
+    }
+}
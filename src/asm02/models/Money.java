@@ -0,0 +1,166 @@
+package asm02.models;
+
+/**
+ * 金額ユーティリティ。
+ * 金額は double ではなく、最小単位（1/100 VND）の整数 long で表す。
+ * - 計算・比較はすべて整数演算で行い、誤差やオブジェクト生成を発生させない
+ * - 表示用の文字列への変換は format / formatUnits で行う
+ */
+public final class Money {
+
+    // 1 VND あたりの最小単位数（小数点以下2桁）
+    public static final long MINOR_PER_UNIT = 100;
+
+    // 1 ベーシスポイント = 0.01%
+    private static final long BASIS_POINTS = 10_000;
+
+    // 最小単位に変換しても long に収まる VND 単位の金額の上限
+    private static final long MAX_UNITS = Long.MAX_VALUE / MINOR_PER_UNIT;
+
+    // 日割り計算に使う1年の日数
+    public static final long DAYS_PER_YEAR = 365;
+
+    private Money() {
+    }
+
+    /**
+     * VND 単位の金額を最小単位に変換する。
+     *
+     * @throws ArithmeticException long の範囲を超える場合
+     */
+    public static long ofUnits(long units) {
+        return Math.multiplyExact(units, MINOR_PER_UNIT);
+    }
+
+    /**
+     * 金額に対する割合（ベーシスポイント指定）を最小単位で求める（端数は四捨五入）。
+     * 例：percentOf(amount, 500) は amount の 5%。
+     * amount * basisPoints が long に収まらない場合も、途中の桁あふれなしで正しく求める。
+     *
+     * @throws ArithmeticException 結果が long の範囲を超える場合
+     */
+    public static long percentOf(long amount, long basisPoints) {
+        return scale(amount, basisPoints, BASIS_POINTS / 2, BASIS_POINTS);
+    }
+
+    /**
+     * 年率（ベーシスポイント指定）に対する1日分の金額を最小単位で求める（端数は切り捨て）。
+     * 例：dailyOf(amount, 120) は年率 1.2% の1日分。
+     * amount * annualBasisPoints が long に収まらない場合も、途中の桁あふれなしで正しく求める。
+     *
+     * @throws ArithmeticException 結果が long の範囲を超える場合
+     */
+    public static long dailyOf(long amount, long annualBasisPoints) {
+        return scale(amount, annualBasisPoints, 0, BASIS_POINTS * DAYS_PER_YEAR);
+    }
+
+    /**
+     * 文字列（"1500000"、"1,500,000.5" など）を最小単位の金額に変換する。
+     * 小数点以下は2桁まで。double を経由しないため誤差は発生しない。
+     *
+     * @throws NumberFormatException 数値として解釈できない場合、または long の範囲を超える場合
+     */
+    public static long parse(String text) {
+        if (text == null) throw new NumberFormatException("金額が入力されていません。");
+        String value = text.trim();
+        if (value.isEmpty()) throw new NumberFormatException("金額が入力されていません。");
+
+        boolean negative = value.charAt(0) == '-';
+        int start = negative || value.charAt(0) == '+' ? 1 : 0;
+        long units = 0;
+        long fraction = 0;
+        int fractionDigits = -1;   // 小数点が現れるまでは -1
+        boolean hasDigit = false;
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' && fractionDigits < 0) {
+                continue;                                    // 桁区切りは無視
+            }
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("金額の形式が正しくありません: " + text);
+            }
+            hasDigit = true;
+            if (fractionDigits < 0) {
+                if (units > (MAX_UNITS - (c - '0')) / 10) {
+                    throw new NumberFormatException("金額が大きすぎます: " + text);
+                }
+                units = units * 10 + (c - '0');
+            } else if (++fractionDigits <= 2) {
+                fraction = fraction * 10 + (c - '0');
+            } else {
+                throw new NumberFormatException("小数点以下は2桁までです: " + text);
+            }
+        }
+        if (!hasDigit) throw new NumberFormatException("金額の形式が正しくありません: " + text);
+        if (fractionDigits == 1) fraction *= 10;
+
+        long minor = units * MINOR_PER_UNIT + fraction;
+        if (minor < 0) {
+            throw new NumberFormatException("金額が大きすぎます: " + text);
+        }
+        return negative ? -minor : minor;
+    }
+
+    /**
+     * 最小単位の金額を "1,234,567.89" の形式で返す。
+     */
+    public static String format(long amount) {
+        long abs = Math.abs(amount);
+        StringBuilder builder = new StringBuilder(24);
+        if (amount < 0) builder.append('-');
+        appendGrouped(builder, abs / MINOR_PER_UNIT);
+        long fraction = abs % MINOR_PER_UNIT;
+        builder.append('.');
+        if (fraction < 10) builder.append('0');
+        builder.append(fraction);
+        return builder.toString();
+    }
+
+    /**
+     * 最小単位の金額を VND 単位に四捨五入し、"1,234,568" の形式で返す（レシート表示用）。
+     */
+    public static String formatUnits(long amount) {
+        long abs = Math.abs(amount);
+        long units = (abs + MINOR_PER_UNIT / 2) / MINOR_PER_UNIT;
+        StringBuilder builder = new StringBuilder(20);
+        if (amount < 0 && units > 0) builder.append('-');
+        appendGrouped(builder, units);
+        return builder.toString();
+    }
+
+    /**
+     * (amount * multiplier + offset) / divisor を求める（0 方向への切り捨て。offset は 0 以上 divisor 未満）。
+     * 積が long に収まる通常の場合はそのまま計算し、収まらない場合は amount と multiplier をそれぞれ divisor で割った
+     * 商と余りに分けて計算する（余り同士の積は divisor の2乗未満のため桁あふれしない）。
+     */
+    private static long scale(long amount, long multiplier, long offset, long divisor) {
+        long product = amount * multiplier;
+        long high = Math.multiplyHigh(amount, multiplier);
+        if (high == (product >> 63) && product <= Long.MAX_VALUE - offset) {
+            return (product + offset) / divisor;
+        }
+        // amount * multiplier + offset = (qa * multiplier + ra * qm) * divisor + (ra * rm + offset)
+        long qa = amount / divisor;
+        long ra = amount % divisor;
+        long qm = multiplier / divisor;
+        long rm = multiplier % divisor;
+        long whole = Math.addExact(Math.multiplyExact(qa, multiplier), Math.multiplyExact(ra, qm));
+        long rest = ra * rm + offset;
+        // 全体が負の場合は 0 方向への切り捨て（rest / divisor の切り上げ）になるよう調整する
+        long part = high < 0 ? -Math.floorDiv(-rest, divisor) : Math.floorDiv(rest, divisor);
+        return Math.addExact(whole, part);
+    }
+
+    private static void appendGrouped(StringBuilder builder, long value) {
+        String digits = Long.toString(value);
+        int firstGroup = digits.length() % 3 == 0 ? 3 : digits.length() % 3;
+        builder.append(digits, 0, firstGroup);
+        for (int i = firstGroup; i < digits.length(); i += 3) {
+            builder.append(',').append(digits, i, i + 3);
+        }
+    }
+}
@@ -20,7 +20,18 @@ public abstract class User {
 
     /* ======= 氏名 ======= */
     public void setName(String name) {
+        String oldName = this.name;
         this.name = name;
+        onNameChanged(oldName);
+    }
+
+    /**
+     * 氏名が変更された後に呼び出される。
+     * 氏名に依存する索引などを持つサブクラスが必要に応じてオーバーライドする。
+     *
+     * @param oldName 変更前の氏名
+     */
+    protected void onNameChanged(String oldName) {
     }
 
     public String getName() {
@@ -49,28 +60,6 @@ public abstract class User {
      * - 先頭3桁が有効な省コードであること
      */
     private boolean isValidCitizenId(String id) {
-        if (id == null || !id.matches("\\d{12}")) return false;
-
-        String province = id.substring(0, 3);
-        return isValidProvinceCode(province);
-    }
-
-    /**
-     * 有効なベトナム省コードかどうかを判定
-     */
-    private boolean isValidProvinceCode(String code) {
-        String[] validCodes = {
-                "001", "002", "004", "006", "008", "010", "011", "012", "014", "015",
-                "017", "019", "020", "022", "024", "025", "026", "027", "030", "031",
-                "033", "034", "035", "036", "037", "038", "040", "042", "044", "045",
-                "046", "048", "049", "051", "052", "054", "056", "058", "060", "062",
-                "064", "066", "067", "068", "070", "072", "074", "075", "077", "079",
-                "080", "082", "083", "084", "086", "087", "089", "091", "092", "093",
-                "094", "095", "096"
-        };
-        for (String valid : validCodes) {
-            if (valid.equals(code)) return true;
-        }
-        return false;
+        return CitizenIdDecoder.isValid(id);
     }
 }
@@ -2,6 +2,15 @@ package asm03;
 
 import asm02.models.Customer;
 import asm02.models.Account;
+import asm02.models.Money;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
 import asm03.models.*;
 
@@ -22,7 +31,26 @@ public class Asm03 {
     private static final String CUSTOMER_ID = "080201009584";
     private static final String CUSTOMER_NAME = "NGUYEN HUU TINH";
 
+    // 変更ログのファイル（起動時に再生して前回までの状態を復元する）
+    private static final Path LOG_FILE = Path.of("digitalbank.wal");
+    private static WriteAheadLog log;
+
+    // スナップショットのファイルと、定期的に書き出す間隔（秒）
+    private static final Path SNAPSHOT_FILE = Path.of("digitalbank.snapshot");
+    private static final long SNAPSHOT_INTERVAL_SECONDS = 600;
+    private static Closeable snapshotWriter;
+
+    // 計測値の出力先と出力間隔（秒）。JMX（asm03:type=BankMetrics）からも参照できる
+    private static final Path METRICS_FILE = Path.of("digitalbank-metrics.log");
+    private static final long METRICS_INTERVAL_SECONDS = 60;
+    private static Closeable metricsDump;
+
+    // 取引履歴の1ページに表示する件数
+    private static final int HISTORY_PAGE_SIZE = 20;
+
     public static void main(String[] args) {
+        openLog();
+        startMetrics();
         seed();
         printMainTitle();
         while (true) {
@@ -31,6 +59,7 @@ public class Asm03 {
             // メインメニュー：3回連続で誤入力 → プログラム終了
             if (choice == null) {
                 System.out.println("入力回数が上限を超えたため、プログラムを終了します。");
+                shutdown();
                 return;
             }
 
@@ -40,7 +69,9 @@ public class Asm03 {
                 case 3 -> addLoanAccount();
                 case 4 -> doWithdraw();
                 case 5 -> viewHistory();
+                case 6 -> doTransfer();
                 case 0 -> {
+                    shutdown();
                     System.out.println("ご利用ありがとうございました。");
                     return;
                 }
@@ -72,10 +103,77 @@ public class Asm03 {
         System.out.println(" 3. ローン口座を追加");
         System.out.println(" 4. 出金する");
         System.out.println(" 5. 取引履歴を表示 ");
+        System.out.println(" 6. 口座振替");
         System.out.println(" 0. 終了");
         System.out.println("------------------------------------");
 
-        return readIntInRangeTry("機能を選択してください: ", 0, 5, 3);
+        return readIntInRangeTry("機能を選択してください: ", 0, 6, 3);
+    }
+
+    /* ================== 永続化 ================== */
+
+    /**
+     * スナップショットと変更ログから前回までの顧客・口座・取引を復元し、変更ログを開く。
+     * 開けなかった場合は永続化なしで続行する。
+     */
+    private static void openLog() {
+        try {
+            BankSnapshot.load(SNAPSHOT_FILE, bank);
+            log = WriteAheadLog.open(LOG_FILE, bank);
+            snapshotWriter = BankSnapshot.startPeriodic(bank, log, SNAPSHOT_FILE, SNAPSHOT_INTERVAL_SECONDS);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("保存データを読み込めませんでした。今回の操作は保存されません。");
+        }
+    }
+
+    /**
+     * 計測値を JMX に登録し、ファイルへの定期出力を開始する。
+     */
+    private static void startMetrics() {
+        BankMetrics.registerMBean();
+        try {
+            PrintStream out = new PrintStream(
+                    Files.newOutputStream(METRICS_FILE, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                    false, StandardCharsets.UTF_8);
+            Closeable dump = BankMetrics.startPeriodicDump(out, METRICS_INTERVAL_SECONDS);
+            metricsDump = () -> {
+                dump.close();
+                BankMetrics.global().sample();
+                out.print(BankMetrics.global().getReport());   // 終了時点の計測値も残す
+                out.close();
+            };
+        } catch (IOException e) {
+            System.out.println("計測値のファイルを開けませんでした。");
+        }
+    }
+
+    /**
+     * 終了処理：レシートを出力しきってから、スナップショットを書き出して変更ログを閉じる。
+     */
+    private static void shutdown() {
+        ReceiptSink.shared().flush();
+        if (metricsDump != null) {
+            try {
+                metricsDump.close();
+            } catch (IOException e) {
+                System.out.println("計測値の書き込みに失敗しました。");
+            }
+        }
+        if (snapshotWriter != null) {
+            try {
+                snapshotWriter.close();
+                BankSnapshot.checkpoint(bank, log, SNAPSHOT_FILE);
+            } catch (IOException e) {
+                System.out.println("スナップショットの書き出しに失敗しました。");
+            }
+        }
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.out.println("変更ログの書き込みに失敗しました。");
+            }
+        }
     }
 
     /* ================== SEED DATA ================== */
@@ -110,8 +208,8 @@ public class Asm03 {
     private static void addSavingsAccount() {
         // ステップ1：口座番号入力
         String accountNumber = readLineMatchingTry(
-                "ATM 口座番号（6桁）を入力してください: ",
-                "\\d{6}",
+                "ATM 口座番号（6桁、空欄で自動採番）を入力してください: ",
+                "\\d{6}|",
                 "口座番号は 6 桁の数字で入力してください。",
                 3
         );
@@ -120,15 +218,20 @@ public class Asm03 {
             return;
         }
 
-        // ステップ2：重複チェック
-        if (bank.isAccountExisted(accountNumber)) {
+        // ステップ2：自動採番 / 重複チェック（手入力の番号は失敗しても解放しない）
+        boolean allocated = accountNumber.isEmpty();
+        if (allocated) {
+            accountNumber = allocateAccountNumber();
+            if (accountNumber == null) return;
+        } else if (bank.isAccountExisted(accountNumber)) {
             System.out.println("この口座番号はすでに存在しています。\n");
             return;
         }
 
         // ステップ3：初期残高入力
-        Double initialBalance = readDoubleMinTry("初期残高（0 以上）を入力してください: ", 0, 3);
-        if (initialBalance == null) {
+        long initialBalance = readMoneyMinTry("初期残高（0 以上）を入力してください: ", 0, 3);
+        if (initialBalance < 0) {
+            if (allocated) bank.releaseAccountNumber(accountNumber);
             System.out.println("メニューに戻ります。\n");
             return;
         }
@@ -138,6 +241,7 @@ public class Asm03 {
         if (customer != null && customer.addAccount(savingsAccount)) {
             System.out.println("ATM 口座の追加に成功しました。\n");
         } else {
+            if (allocated) bank.releaseAccountNumber(accountNumber);
             System.out.println("口座を追加できませんでした。\n");
         }
     }
@@ -148,8 +252,8 @@ public class Asm03 {
     private static void addLoanAccount() {
         // ステップ1：ローン口座番号入力
         String accountNumber = readLineMatchingTry(
-                "ローン口座番号（6桁）を入力してください: ",
-                "\\d{6}",
+                "ローン口座番号（6桁、空欄で自動採番）を入力してください: ",
+                "\\d{6}|",
                 "口座番号は 6 桁の数字で入力してください。",
                 3
         );
@@ -158,8 +262,12 @@ public class Asm03 {
             return;
         }
 
-        // ステップ2：重複チェック
-        if (bank.isAccountExisted(accountNumber)) {
+        // ステップ2：自動採番 / 重複チェック（手入力の番号は失敗しても解放しない）
+        boolean allocated = accountNumber.isEmpty();
+        if (allocated) {
+            accountNumber = allocateAccountNumber();
+            if (accountNumber == null) return;
+        } else if (bank.isAccountExisted(accountNumber)) {
             System.out.println("この口座番号はすでに存在しています。\n");
             return;
         }
@@ -170,10 +278,28 @@ public class Asm03 {
         if (customer != null && customer.addAccount(loanAccount)) {
             System.out.println("ローン口座の追加に成功しました。\n");
         } else {
+            if (allocated) bank.releaseAccountNumber(accountNumber);
             System.out.println("口座を追加できませんでした。\n");
         }
     }
 
+    /**
+     * 空いている口座番号を割り当てて表示する。
+     *
+     * @return 割り当てた口座番号、空き番号がない場合は null
+     */
+    private static String allocateAccountNumber() {
+        try {
+            String accountNumber = bank.allocateAccountNumber();
+            System.out.printf("口座番号 %s を割り当てました（使用率 %.2f%%）。%n",
+                    accountNumber, bank.getAccountNumberAllocator().utilization() * 100);
+            return accountNumber;
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + "\n");
+            return null;
+        }
+    }
+
     /**
      * デモ顧客の任意の口座から出金する。
      */
@@ -191,16 +317,82 @@ public class Asm03 {
         }
 
         // ステップ2：金額入力
-        Double amount = readDoubleMinTry("出金額を入力してください: ", 1, 3);
-        if (amount == null) {
+        long amount = readMoneyMinTry("出金額を入力してください: ", Money.ofUnits(1), 3);
+        if (amount < 0) {
             System.out.println("メニューに戻ります。\n");
             return;
         }
 
-        boolean success = bank.withdraw(CUSTOMER_ID, accountNumber, amount);
+        boolean success;
+        try {
+            success = bank.withdraw(CUSTOMER_ID, accountNumber, amount);
+        } catch (UncheckedIOException e) {
+            ReceiptSink.shared().flush();
+            printNotDurable(e);
+            return;
+        }
+        ReceiptSink.shared().flush();   // レシートを先に出力してから結果を表示する
         System.out.println(success ? "出金に成功しました。\n" : "出金に失敗しました。\n");
     }
 
+    /**
+     * デモ顧客の口座から別の口座へ振替する。
+     */
+    private static void doTransfer() {
+        // ステップ1：振替元・振替先の口座番号入力
+        String fromAccountNumber = readLineMatchingTry(
+                "振替元の口座番号（6桁）を入力してください: ",
+                "\\d{6}",
+                "口座番号は 6 桁の数字で入力してください。",
+                3
+        );
+        if (fromAccountNumber == null) {
+            System.out.println("メニューに戻ります。\n");
+            return;
+        }
+        String toAccountNumber = readLineMatchingTry(
+                "振替先の口座番号（6桁）を入力してください: ",
+                "\\d{6}",
+                "口座番号は 6 桁の数字で入力してください。",
+                3
+        );
+        if (toAccountNumber == null) {
+            System.out.println("メニューに戻ります。\n");
+            return;
+        }
+
+        // ステップ2：金額入力
+        long amount = readMoneyMinTry("振替額を入力してください: ", Money.ofUnits(1), 3);
+        if (amount < 0) {
+            System.out.println("メニューに戻ります。\n");
+            return;
+        }
+
+        TransferResult result;
+        try {
+            result = bank.transfer(CUSTOMER_ID, fromAccountNumber, toAccountNumber, amount);
+        } catch (UncheckedIOException e) {
+            printNotDurable(e);
+            return;
+        }
+        System.out.println(result.isSuccess()
+                ? "振替に成功しました。\n"
+                : "振替に失敗しました（" + result.getLabel() + "）。\n");
+    }
+
+    /**
+     * 取引の反映後に変更ログへの書き込みに失敗したことを表示する（残高はすでに動いているため、やり直さないよう促す）。
+     */
+    private static void printNotDurable(UncheckedIOException e) {
+        if (e instanceof NotDurableException notDurable) {
+            System.out.println("取引は反映されましたが（結果: " + notDurable.getResult()
+                    + "）、変更ログに書き込めませんでした。やり直さずに残高を確認してください。\n");
+        } else {
+            System.out.println("変更ログに書き込めませんでした。やり直す前に残高を確認してください: "
+                    + e.getMessage() + "\n");
+        }
+    }
+
     /**
      * デモ顧客のすべての口座に対する取引履歴を表示する。
      */
@@ -211,14 +403,23 @@ public class Asm03 {
             return;
         }
 
-        for (Account account : customer.getAccounts()) {
+        HistoryQuery query = HistoryQuery.all(HISTORY_PAGE_SIZE);
+        for (Account account : customer.copyAccounts()) {
             System.out.println("口座番号: " + account.getAccountNumber());
-            if (account instanceof SavingsAccount savingsAccount) {
-                savingsAccount.getTransactions()
-                        .forEach(transaction -> System.out.println("  " + transaction));
-            } else if (account instanceof LoanAccount loanAccount) {
-                loanAccount.getTransactions()
-                        .forEach(transaction -> System.out.println("  " + transaction));
+            long cursor = HistoryPage.FIRST;
+            while (true) {
+                HistoryPage page = bank.queryHistory(CUSTOMER_ID, account.getAccountNumber(), query, cursor);
+                if (page == null) break;
+                StringBuilder lines = new StringBuilder(page.transactions().size() * 96);
+                for (Transaction transaction : page.transactions()) {
+                    lines.append("  ").append(transaction).append(System.lineSeparator());
+                }
+                System.out.print(lines);
+                if (!page.hasNext()) break;
+
+                System.out.print("Enter で次のページ、0 で次の口座へ: ");
+                if (input.nextLine().trim().equals("0")) break;
+                cursor = page.nextCursor();
             }
         }
         System.out.println();
@@ -251,19 +452,19 @@ public class Asm03 {
     }
 
     /**
-     * 最小値（minValue）以上の実数を安全に読み込むユーティリティ。
+     * 最小値（minValue）以上の金額を安全に読み込むユーティリティ。
      * 最大 maxAttempts 回まで再入力を許可する。
      *
-     * @return 有効な double、または失敗時は null
+     * @return 有効な金額（最小単位、{@link Money} 参照）、または失敗時は -1
      */
-    private static Double readDoubleMinTry(String promptMessage, double minValue, int maxAttempts) {
+    private static long readMoneyMinTry(String promptMessage, long minValue, int maxAttempts) {
         for (int attempt = 1; attempt <= maxAttempts; attempt++) {
             System.out.print(promptMessage);
             try {
-                double inputValue = Double.parseDouble(input.nextLine().trim());
+                long inputValue = Money.parse(input.nextLine());
                 if (inputValue < minValue) {
-                    System.out.printf("値は %.0f 以上で入力してください。（%d/%d 回目）%n",
-                            minValue, attempt, maxAttempts);
+                    System.out.printf("値は %s 以上で入力してください。（%d/%d 回目）%n",
+                            Money.formatUnits(minValue), attempt, maxAttempts);
                     continue;
                 }
                 return inputValue;
@@ -271,7 +472,7 @@ public class Asm03 {
                 System.out.printf("数値で入力してください。（%d/%d 回目）%n", attempt, maxAttempts);
             }
         }
-        return null;
+        return -1;
     }
 
     /**
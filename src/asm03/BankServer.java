@@ -0,0 +1,415 @@
+package asm03;
+
+import asm02.models.Account;
+import asm02.models.Customer;
+import asm02.models.Money;
+import asm03.models.AccountKind;
+import asm03.models.BankMetrics;
+import asm03.models.BankSnapshot;
+import asm03.models.DigitalBank;
+import asm03.models.HistoryPage;
+import asm03.models.HistoryQuery;
+import asm03.models.NotDurableException;
+import asm03.models.Transaction;
+import asm03.models.TransactionIdGenerator;
+import asm03.models.TransferResult;
+import asm03.models.WithdrawRequest;
+import asm03.models.WithdrawResult;
+import asm03.models.WriteAheadLog;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DigitalBank を HTTP で公開するサーバー（JDK 標準の com.sun.net.httpserver を使用）。
+ * 要求はそれぞれ仮想スレッドで処理する（JDK 21 以降）。仮想スレッドが使えない JDK では
+ * 固定数のスレッドプールで処理する。接続の受け付けと読み込みはセレクタで行うため、
+ * 同時接続数はスレッド数に制限されない。
+ *
+ * <pre>
+ * GET  /customers/{個人番号}                          顧客情報と口座一覧
+ * POST /customers?id=&amp;name=                        顧客の登録
+ * POST /accounts?customerId=&amp;kind=SAVINGS|LOAN&amp;balance=[&amp;number=]
+ *                                                     口座の開設（number 省略時は自動採番）
+ * POST /withdraw?customerId=&amp;accountNumber=&amp;amount=[&amp;requestId=]
+ *                                                     出金（requestId 指定時は再送しても1回だけ出金）
+ * POST /transfer?customerId=&amp;from=&amp;to=&amp;amount=       口座振替（from の口座の保有者の個人番号を指定）
+ * GET  /accounts/{口座番号}/history?customerId=[&amp;from=&amp;to=&amp;status=&amp;limit=&amp;cursor=]
+ *                                                     取引履歴（from / to はエポックミリ秒）
+ * GET  /metrics                                       計測値
+ * </pre>
+ * 金額は VND 単位（小数点以下 2 桁まで）で指定し、応答は JSON で返す。
+ * 出金・振替が反映された後に変更ログの書き込みに失敗した場合は、202 と "durable":false を付けた結果を返す
+ * （残高はすでに動いているため、呼び出し元は再送せずに照会すること）。
+ *
+ * 使い方: java asm03.BankServer [ポート番号]
+ */
+public class BankServer {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 4096;
+    private static final int DEFAULT_HISTORY_LIMIT = 50;
+    private static final int MAX_HISTORY_LIMIT = 1_000;
+
+    private static final Path LOG_FILE = Path.of("digitalbank.wal");
+    private static final Path SNAPSHOT_FILE = Path.of("digitalbank.snapshot");
+    private static final long SNAPSHOT_INTERVAL_SECONDS = 600;
+
+    private final DigitalBank bank;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public BankServer(DigitalBank bank, int port) throws IOException {
+        this.bank = bank;
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/customers", exchange -> handle(exchange, this::customers));
+        server.createContext("/accounts", exchange -> handle(exchange, this::accounts));
+        server.createContext("/withdraw", exchange -> handle(exchange, this::withdraw));
+        server.createContext("/transfer", exchange -> handle(exchange, this::transfer));
+        server.createContext("/metrics", exchange -> handle(exchange, this::metrics));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+
+        DigitalBank bank = new DigitalBank();
+        BankSnapshot.load(SNAPSHOT_FILE, bank);
+        WriteAheadLog log = WriteAheadLog.open(LOG_FILE, bank);
+        Closeable snapshotWriter = BankSnapshot.startPeriodic(bank, log, SNAPSHOT_FILE, SNAPSHOT_INTERVAL_SECONDS);
+        BankMetrics.registerMBean();
+
+        BankServer bankServer = new BankServer(bank, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            bankServer.stop();
+            try {
+                snapshotWriter.close();
+                BankSnapshot.checkpoint(bank, log, SNAPSHOT_FILE);
+                log.close();
+            } catch (IOException e) {
+                System.err.println("終了処理に失敗しました: " + e.getMessage());
+            }
+        }, "bank-server-shutdown"));
+
+        bankServer.start();
+        System.out.printf("デジタルバンク サーバーを起動しました: http://localhost:%d/%n", port);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * 新しい接続の受け付けを止め、処理中の要求が終わるのを待ってから停止する。
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 要求を処理するスレッド。
+     * JDK 21 以降は要求ごとに仮想スレッドを使う（JDK 17 でもコンパイルできるようリフレクションで呼び出す）。
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.max(64, Runtime.getRuntime().availableProcessors() * 16);
+            return Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "bank-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /* ======================= 要求の処理 ======================= */
+
+    /**
+     * 1件の要求の処理結果（HTTP ステータスと JSON 本文）
+     */
+    private record Response(int status, String body) {
+        static Response ok(String body) {
+            return new Response(200, body);
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, "{\"error\":" + quote(message) + "}");
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Response handle(String method, String[] path, Map<String, String> params);
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        Response response;
+        try {
+            String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            response = handler.handle(exchange.getRequestMethod(), path, params);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            // NumberFormatException（金額・数値の形式）と、金額の計算の桁あふれも含む
+            response = Response.error(400, e.getMessage() == null ? "不正な要求です。" : e.getMessage());
+        } catch (IllegalStateException e) {
+            // 口座番号の空きがない場合など
+            response = Response.error(503, e.getMessage());
+        } catch (RuntimeException e) {
+            response = Response.error(500, "サーバー内部でエラーが発生しました。");
+        }
+
+        byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status(), body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private Response customers(String method, String[] path, Map<String, String> params) {
+        if (method.equals("GET") && path.length == 2) {
+            Customer customer = bank.getCustomerById(path[1]);
+            if (customer == null) {
+                return Response.error(404, "顧客が見つかりません。");
+            }
+            return Response.ok(customerJson(customer));
+        }
+        if (method.equals("POST") && path.length == 1) {
+            Customer customer = new Customer(required(params, "name"), required(params, "id"));
+            if (!bank.addCustomer(customer)) {
+                return Response.error(409, "この顧客はすでに登録されています。");
+            }
+            return new Response(201, customerJson(customer));
+        }
+        return Response.error(405, "対応していない要求です。");
+    }
+
+    private Response accounts(String method, String[] path, Map<String, String> params) {
+        if (method.equals("POST") && path.length == 1) {
+            return openAccount(params);
+        }
+        if (method.equals("GET") && path.length == 3 && path[2].equals("history")) {
+            return history(path[1], params);
+        }
+        return Response.error(405, "対応していない要求です。");
+    }
+
+    private Response openAccount(Map<String, String> params) {
+        Customer customer = bank.getCustomerById(required(params, "customerId"));
+        if (customer == null) {
+            return Response.error(404, "顧客が見つかりません。");
+        }
+        AccountKind kind = AccountKind.valueOf(required(params, "kind").toUpperCase(Locale.ROOT));
+        if (kind == AccountKind.PLAIN) {
+            throw new IllegalArgumentException("口座の種類は SAVINGS または LOAN を指定してください。");
+        }
+        long balance = params.containsKey("balance") ? Money.parse(params.get("balance")) : 0;
+        if (balance < 0) {
+            throw new IllegalArgumentException("残高はマイナスにできません。");
+        }
+
+        String requested = params.get("number");
+        boolean allocated = requested == null || requested.isEmpty();
+        String accountNumber = allocated ? bank.allocateAccountNumber() : requested;
+        try {
+            Account account = kind.create(accountNumber, balance);
+            if (!customer.addAccount(account)) {
+                if (allocated) bank.releaseAccountNumber(accountNumber);
+                return Response.error(409, "この口座番号はすでに存在しています。");
+            }
+            return new Response(201, accountJson(account));
+        } catch (IllegalArgumentException e) {
+            if (allocated) bank.releaseAccountNumber(accountNumber);
+            throw e;
+        }
+    }
+
+    private Response withdraw(String method, String[] path, Map<String, String> params) {
+        if (!method.equals("POST") || path.length != 1) {
+            return Response.error(405, "対応していない要求です。");
+        }
+        WithdrawRequest request = new WithdrawRequest(
+                required(params, "customerId"),
+                required(params, "accountNumber"),
+                Money.parse(required(params, "amount")));
+        // requestId を指定した場合は再送されても二重に出金しない
+        String requestId = params.get("requestId");
+        WithdrawResult result;
+        boolean durable = true;
+        try {
+            result = requestId == null || requestId.isEmpty()
+                    ? bank.withdraw(request)
+                    : bank.withdraw(requestId, request);
+        } catch (NotDurableException e) {
+            result = (WithdrawResult) e.getResult();
+            durable = false;
+        }
+        int status = switch (result) {
+            case SUCCESS -> durable ? 200 : 202;
+            case ACCOUNT_NOT_FOUND -> 404;
+            case CUSTOMER_MISMATCH -> 403;
+            case REJECTED, NOT_WITHDRAWABLE -> 422;
+        };
+        return resultResponse(status, result.name(), result.getLabel(), durable);
+    }
+
+    private Response transfer(String method, String[] path, Map<String, String> params) {
+        if (!method.equals("POST") || path.length != 1) {
+            return Response.error(405, "対応していない要求です。");
+        }
+        TransferResult result;
+        boolean durable = true;
+        try {
+            result = bank.transfer(
+                    required(params, "customerId"),
+                    required(params, "from"),
+                    required(params, "to"),
+                    Money.parse(required(params, "amount")));
+        } catch (NotDurableException e) {
+            result = (TransferResult) e.getResult();
+            durable = false;
+        }
+        int status = switch (result) {
+            case SUCCESS -> durable ? 200 : 202;
+            case ACCOUNT_NOT_FOUND -> 404;
+            case CUSTOMER_MISMATCH -> 403;
+            case REJECTED, NOT_TRANSFERABLE, SAME_ACCOUNT -> 422;
+        };
+        return resultResponse(status, result.name(), result.getLabel(), durable);
+    }
+
+    /**
+     * 出金・振替の結果の応答（変更ログに書き込めなかった場合は "durable":false を付ける）
+     */
+    private static Response resultResponse(int status, String result, String message, boolean durable) {
+        return new Response(status, "{\"result\":" + quote(result)
+                + ",\"message\":" + quote(message)
+                + (durable ? "" : ",\"durable\":false") + "}");
+    }
+
+    private Response history(String accountNumber, Map<String, String> params) {
+        int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : DEFAULT_HISTORY_LIMIT;
+        HistoryQuery query = new HistoryQuery(
+                params.containsKey("from") ? Long.parseLong(params.get("from")) : Long.MIN_VALUE,
+                params.containsKey("to") ? Long.parseLong(params.get("to")) : Long.MAX_VALUE,
+                HistoryQuery.StatusFilter.valueOf(params.getOrDefault("status", "ALL").toUpperCase(Locale.ROOT)),
+                Math.min(limit, MAX_HISTORY_LIMIT));
+        long cursor = params.containsKey("cursor") ? Long.parseLong(params.get("cursor")) : HistoryPage.FIRST;
+
+        HistoryPage page = bank.queryHistory(required(params, "customerId"), accountNumber, query, cursor);
+        if (page == null) {
+            return Response.error(404, "口座が見つかりません。");
+        }
+        StringBuilder json = new StringBuilder(64 + page.transactions().size() * 128);
+        json.append("{\"transactions\":[");
+        for (int i = 0; i < page.transactions().size(); i++) {
+            Transaction transaction = page.transactions().get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"id\":").append(quote(TransactionIdGenerator.format(transaction.getId())))
+                    .append(",\"type\":").append(quote(transaction.getType().name()))
+                    .append(",\"amount\":").append(quote(Money.format(transaction.getAmount())))
+                    .append(",\"time\":").append(transaction.getTime())
+                    .append(",\"success\":").append(transaction.isSuccess())
+                    .append('}');
+        }
+        json.append("],\"nextCursor\":").append(page.hasNext() ? Long.toString(page.nextCursor()) : "null")
+                .append('}');
+        return Response.ok(json.toString());
+    }
+
+    private Response metrics(String method, String[] path, Map<String, String> params) {
+        BankMetrics metrics = BankMetrics.global();
+        return Response.ok("{\"report\":" + quote(metrics.getReport()) + "}");
+    }
+
+    /* ======================= JSON ======================= */
+
+    private static String customerJson(Customer customer) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"id\":").append(quote(customer.getCustomerId()))
+                .append(",\"name\":").append(quote(customer.getName()))
+                .append(",\"premium\":").append(customer.isPremiumCustomer())
+                .append(",\"totalBalance\":").append(quote(Money.format(customer.getTotalBalance())))
+                .append(",\"accounts\":[");
+        boolean first = true;
+        for (Account account : customer.copyAccounts()) {
+            if (!first) json.append(',');
+            json.append(accountJson(account));
+            first = false;
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String accountJson(Account account) {
+        return "{\"number\":" + quote(account.getAccountNumber())
+                + ",\"kind\":" + quote(AccountKind.of(account).name())
+                + ",\"balance\":" + quote(Money.format(account.getBalance()))
+                + ",\"premium\":" + account.isPremium() + "}";
+    }
+
+    private static String quote(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /* ======================= パラメータ ======================= */
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("パラメータ " + name + " を指定してください。");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,55 @@
+package asm03;
+
+import asm03.models.BankSnapshot;
+import asm03.models.BulkImporter;
+import asm03.models.DigitalBank;
+import asm03.models.WriteAheadLog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 顧客・口座の一括取込ツール。
+ * Asm03 と同じ保存データ（スナップショット・変更ログ）を読み込み、ファイルの内容を取り込んでから
+ * スナップショットを書き出す。
+ *
+ * 使い方: java asm03.BulkImport 入力ファイル [取込不可の報告ファイル] [csv|fixed]
+ */
+public class BulkImport {
+    private static final Path LOG_FILE = Path.of("digitalbank.wal");
+    private static final Path SNAPSHOT_FILE = Path.of("digitalbank.snapshot");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("使い方: java asm03.BulkImport 入力ファイル [取込不可の報告ファイル] [csv|fixed]");
+            return;
+        }
+        Path input = Path.of(args[0]);
+        Path rejectFile = args.length > 1 ? Path.of(args[1]) : Path.of("rejected.csv");
+        BulkImporter.Format format = args.length > 2 && args[2].equalsIgnoreCase("fixed")
+                ? BulkImporter.Format.FIXED_WIDTH
+                : BulkImporter.Format.CSV;
+
+        DigitalBank bank = new DigitalBank();
+        BankSnapshot.load(SNAPSHOT_FILE, bank);
+        try (WriteAheadLog log = WriteAheadLog.open(LOG_FILE, bank);
+             BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             Writer rejects = new BufferedWriter(Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8))) {
+            BulkImporter importer = new BulkImporter(bank, format, Runtime.getRuntime().availableProcessors());
+            BulkImporter.Result result = importer.importFrom(reader, rejects);
+
+            System.out.printf("読み込み行数 : %,d%n", result.lines());
+            System.out.printf("登録顧客数   : %,d%n", result.customers());
+            System.out.printf("登録口座数   : %,d%n", result.accounts());
+            System.out.printf("取込不可     : %,d（%s）%n", result.rejected(), rejectFile);
+            System.out.printf("処理時間     : %,d ms%n", result.millis());
+
+            BankSnapshot.checkpoint(bank, log, SNAPSHOT_FILE);
+        }
+    }
+}
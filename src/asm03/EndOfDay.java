@@ -0,0 +1,55 @@
+package asm03;
+
+import asm02.models.Money;
+import asm03.models.BankSnapshot;
+import asm03.models.DigitalBank;
+import asm03.models.EndOfDayAccrual;
+import asm03.models.WriteAheadLog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * 日次の利息計上ツール。
+ * Asm03 と同じ保存データ（スナップショット・変更ログ）を読み込み、全口座に1日分の利息を計上してから
+ * スナップショットを書き出す。
+ *
+ * 同じ営業日の利息がすでに計上されている場合は何もせずに終了する。
+ *
+ * 使い方: java asm03.EndOfDay [スレッド数] [営業日（yyyy-MM-dd。省略時は今日）]
+ */
+public class EndOfDay {
+    private static final Path LOG_FILE = Path.of("digitalbank.wal");
+    private static final Path SNAPSHOT_FILE = Path.of("digitalbank.snapshot");
+    private static final int CHUNK_SIZE = 4_096;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        LocalDate businessDate = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.now();
+
+        DigitalBank bank = new DigitalBank();
+        BankSnapshot.load(SNAPSHOT_FILE, bank);
+        try (WriteAheadLog log = WriteAheadLog.open(LOG_FILE, bank)) {
+            LocalDate lastAccrual = bank.getLastAccrualDate();
+            if (lastAccrual != null && businessDate.isBefore(lastAccrual)) {
+                System.out.println(businessDate + " は最後に利息を計上した日より前です（最終計上日: " + lastAccrual + "）。");
+                return;
+            }
+            if (businessDate.equals(lastAccrual)) {
+                System.out.println(businessDate + " の利息計上を再開します（計上済みの口座は読み飛ばします）。");
+            }
+            EndOfDayAccrual.Result result = new EndOfDayAccrual(bank, threads, CHUNK_SIZE).run(businessDate);
+
+            System.out.printf("対象口座数       : %,d%n", result.accounts());
+            System.out.printf("計上済み         : %,d 口座%n", result.alreadyAccrued());
+            System.out.printf("普通預金 受取利息 : %,d 口座 / %s VND%n",
+                    result.savingsAccrued(), Money.format(result.savingsInterest()));
+            System.out.printf("ローン 支払利息   : %,d 口座 / %s VND%n",
+                    result.loansAccrued(), Money.format(result.loanInterest()));
+            System.out.printf("処理時間         : %,d ms%n", result.millis());
+
+            BankSnapshot.checkpoint(bank, log, SNAPSHOT_FILE);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package asm03.benchmark;
+
+import asm02.models.Customer;
+import asm02.models.Money;
+import asm03.models.DigitalBank;
+import asm03.models.ReceiptSink;
+import asm03.models.SavingsAccount;
+import asm03.models.WithdrawRequest;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * DigitalBank.withdrawBatch と、withdraw を1件ずつ呼び出した場合の処理件数の比較。
+ *
+ * 使い方: java asm03.benchmark.BatchWithdrawBenchmark [口座数] [1バッチの件数] [繰り返し回数]
+ */
+public class BatchWithdrawBenchmark {
+
+    private static final long AMOUNT = Money.ofUnits(50_000);
+    private static final long INITIAL_BALANCE = Money.ofUnits(1_000_000_000_000L);
+
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        DigitalBank bank = new DigitalBank();
+        List<WithdrawRequest> batch = prepare(bank, accounts, batchSize);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long loopNanos;
+        long batchNanos;
+        try {
+            measureLoop(bank, batch, rounds);               // ウォームアップ
+            measureBatch(bank, batch, rounds);
+            loopNanos = measureLoop(bank, batch, rounds);
+            batchNanos = measureBatch(bank, batch, rounds);
+        } finally {
+            ReceiptSink.shared().flush();
+            System.setOut(console);
+        }
+
+        long total = (long) batchSize * rounds;
+        console.printf("1件ずつ  : %,15.0f 件/秒%n", total / (loopNanos / 1e9));
+        console.printf("一括処理 : %,15.0f 件/秒%n", total / (batchNanos / 1e9));
+    }
+
+    private static List<WithdrawRequest> prepare(DigitalBank bank, int accounts, int batchSize) {
+        String customerId = "001200000000";
+        Customer customer = new Customer("BENCHMARK", customerId);
+        bank.addCustomer(customer);
+        for (int a = 0; a < accounts; a++) {
+            customer.addAccount(new SavingsAccount(String.format("%06d", a), INITIAL_BALANCE));
+        }
+
+        Random random = new Random(42);
+        List<WithdrawRequest> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new WithdrawRequest(customerId, String.format("%06d", random.nextInt(accounts)), AMOUNT));
+        }
+        return batch;
+    }
+
+    private static long measureLoop(DigitalBank bank, List<WithdrawRequest> batch, int rounds) {
+        long begin = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (WithdrawRequest request : batch) {
+                bank.withdraw(request.customerId(), request.accountNumber(), request.amount());
+            }
+        }
+        return System.nanoTime() - begin;
+    }
+
+    private static long measureBatch(DigitalBank bank, List<WithdrawRequest> batch, int rounds) {
+        long begin = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            bank.withdrawBatch(batch);
+        }
+        return System.nanoTime() - begin;
+    }
+}
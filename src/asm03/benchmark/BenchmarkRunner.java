@@ -0,0 +1,120 @@
+package asm03.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ベンチマーク計測用の小さな実行器。
+ * ウォームアップの後、指定スレッド数で一定時間処理を繰り返し、
+ * 1秒あたりの処理件数と 1件あたりのヒープ割り当てバイト数を計測する。
+ * 割り当てバイト数は com.sun.management.ThreadMXBean のスレッド単位の計測値から求める。
+ * 計測後に整合性を確認するシナリオ計測用。個々の処理の計測は jmh モジュール（JMH）で行う。
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * 計測対象の処理。
+     * 同じスレッドからは毎回増えていく番号で呼び出され、戻り値は最適化で処理が消えないように集計される。
+     */
+    @FunctionalInterface
+    public interface Operation {
+        long run(int thread, long iteration);
+    }
+
+    /**
+     * 計測結果
+     *
+     * @param opsPerSecond      1秒あたりの処理件数
+     * @param bytesPerOperation 1件あたりの割り当てバイト数（計測できない場合は -1）
+     */
+    public record Result(double opsPerSecond, double bytesPerOperation) {
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    // 戻り値の集計先（JIT による処理の削除を防ぐ）
+    private static final AtomicLong SINK = new AtomicLong();
+
+    private final int warmupMillis;
+    private final int measureMillis;
+
+    public BenchmarkRunner(int warmupMillis, int measureMillis) {
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+    }
+
+    /**
+     * 処理をウォームアップしてから計測する。
+     */
+    public Result measure(int threads, Operation operation) throws InterruptedException {
+        runFor(threads, operation, warmupMillis);
+        return runFor(threads, operation, measureMillis);
+    }
+
+    private Result runFor(int threads, Operation operation, int millis) throws InterruptedException {
+        long[] counts = new long[threads];
+        long[] allocated = new long[threads];
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        long[] window = new long[1];
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                long sink = 0;
+                long iteration = 0;
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    return;
+                }
+                long bytesBefore = allocatedBytes();
+                long deadline = System.nanoTime() + millis * 1_000_000L;
+                // 時刻の確認は 256 回に 1 回にして、計測のオーバーヘッドを抑える
+                while ((iteration & 0xFF) != 0 || System.nanoTime() < deadline) {
+                    sink += operation.run(thread, iteration);
+                    iteration++;
+                }
+                allocated[thread] = bytesBefore < 0 ? -1 : allocatedBytes() - bytesBefore;
+                counts[thread] = iteration;
+                SINK.addAndGet(sink);
+            }, "bench-" + t);
+            workers[t].start();
+        }
+
+        try {
+            start.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        window[0] = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - window[0]) / 1e9;
+
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int t = 0; t < threads; t++) {
+            totalOps += counts[t];
+            totalBytes = allocated[t] < 0 || totalBytes < 0 ? -1 : totalBytes + allocated[t];
+        }
+        double bytesPerOp = totalBytes < 0 || totalOps == 0 ? -1 : (double) totalBytes / totalOps;
+        return new Result(totalOps / seconds, bytesPerOp);
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS == null) return -1;
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+}
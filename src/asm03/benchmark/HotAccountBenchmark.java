@@ -0,0 +1,98 @@
+package asm03.benchmark;
+
+import asm02.models.Account;
+import asm02.models.Customer;
+import asm02.models.Money;
+import asm03.models.AccountHistory;
+import asm03.models.DigitalBank;
+import asm03.models.LoanAccount;
+import asm03.models.TransactionJournal;
+import asm03.models.WithdrawRequest;
+
+/**
+ * 1つのローン口座に出金が集中する場合（法人口座など）の計測。
+ * ロック方式で始める場合（奪い合いを検出するとストライプ方式に自動で切り替わる）と、
+ * 最初からストライプ方式にする場合について、スレッド数を変えながら1秒あたりの出金件数を表示する。
+ * 計測後に次の点を確認する。
+ * <ul>
+ *   <li>利用額が限度額と最低利用可能枠の条件を守っていること</li>
+ *   <li>利用額が、取引履歴に記録された増減の合計と一致すること</li>
+ *   <li>銀行全体のローン利用総額が口座の利用額と一致すること</li>
+ * </ul>
+ *
+ * 使い方: java asm03.benchmark.HotAccountBenchmark [最大スレッド数] [計測秒数]
+ */
+public class HotAccountBenchmark {
+
+    private static final String CUSTOMER_ID = "001200000000";
+
+    // 1回の出金額（限度額に達するまでに十分な回数の出金ができる小さな額）
+    private static final long AMOUNT = Money.ofUnits(1);
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        BenchmarkRunner runner = new BenchmarkRunner(500, seconds * 1_000);
+
+        System.out.printf("%-10s | %-8s | %15s | %-10s | %s%n", "方式", "スレッド", "出金件数/秒", "切り替え", "整合性");
+        System.out.println("-----------+----------+-----------------+------------+--------");
+        for (boolean stripedFromStart : new boolean[]{false, true}) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                DigitalBank bank = new DigitalBank();
+                LoanAccount account = openLoanAccount(bank);
+                if (stripedFromStart) {
+                    account.enableStripedBalance();
+                }
+                WithdrawRequest request = new WithdrawRequest(CUSTOMER_ID, account.getAccountNumber(), AMOUNT);
+
+                BenchmarkRunner.Result result = runner.measure(threads,
+                        (thread, iteration) -> bank.withdraw(request).ordinal());
+
+                boolean promoted = account.isStripedBalance();
+                account.disableStripedBalance();   // ストライプの利用額を残高に反映してから確認する
+                System.out.printf("%-10s | %8d | %,15.0f | %-10s | %s%n",
+                        stripedFromStart ? "ストライプ" : "自動", threads, result.opsPerSecond(),
+                        promoted ? "あり" : "なし", verify(bank, account));
+            }
+        }
+    }
+
+    private static LoanAccount openLoanAccount(DigitalBank bank) {
+        Customer customer = new Customer("BENCHMARK", CUSTOMER_ID);
+        bank.addCustomer(customer);
+        LoanAccount account = new LoanAccount(bank.allocateAccountNumber(), 0);
+        customer.addAccount(account);
+        return account;
+    }
+
+    /**
+     * 利用額・取引履歴・銀行全体の集計値の整合性を確認する。
+     */
+    private static String verify(DigitalBank bank, LoanAccount account) {
+        long used = account.getBalance();
+        if (used > LoanAccount.LOAN_ACCOUNT_MAX_BALANCE - LoanAccount.LOAN_ACCOUNT_MIN_REMAINING_LIMIT) {
+            return "NG 限度額超過 " + Money.format(used);
+        }
+        AccountHistory history = account.getHistory();
+        TransactionJournal journal = history.getJournal();
+        // 手数料率は出金時点の利用額（会員区分）で決まるため、記録順に利用額を積み上げながら求める
+        long recorded = 0;
+        for (int i = 0; i < history.size(); i++) {
+            long row = history.rowAt(i);
+            if (journal.status(row)) {
+                long amount = journal.amount(row);
+                long feeBps = recorded >= Account.PREMIUM_THRESHOLD
+                        ? LoanAccount.LOAN_ACCOUNT_WITHDRAW_PREMIUM_FEE_BPS
+                        : LoanAccount.LOAN_ACCOUNT_WITHDRAW_FEE_BPS;
+                recorded += amount + Money.percentOf(amount, feeBps);
+            }
+        }
+        if (recorded != used) {
+            return "NG 履歴の合計 " + Money.format(recorded) + " ≠ 利用額 " + Money.format(used);
+        }
+        if (bank.getTotalLoans() != used) {
+            return "NG 利用総額 " + Money.format(bank.getTotalLoans());
+        }
+        return "OK";
+    }
+}
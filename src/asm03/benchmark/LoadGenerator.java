@@ -0,0 +1,291 @@
+package asm03.benchmark;
+
+import asm02.models.Account;
+import asm02.models.CitizenIdDecoder;
+import asm02.models.Customer;
+import asm02.models.Money;
+import asm03.models.AccountNumberAllocator;
+import asm03.models.BankMetrics;
+import asm03.models.DigitalBank;
+import asm03.models.LatencyHistogram;
+import asm03.models.LoanAccount;
+import asm03.models.SavingsAccount;
+import asm03.models.WithdrawRequest;
+import asm03.models.WithdrawResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 負荷生成ツール（ハードウェアの見積もりや性能劣化の検出に使う）。
+ * <ol>
+ *   <li>有効な個人番号（User の検証を通るもの）を持つ顧客を大量に生成する</li>
+ *   <li>顧客ごとに指定の数の口座を、普通預金口座またはローン口座を指定の比率で開設する（口座番号は自動採番）</li>
+ *   <li>Zipf 分布で偏らせた口座に対して、複数スレッドから一定時間出金を繰り返す</li>
+ *   <li>スループット・処理時間のパーセンタイル・拒否率を出力する</li>
+ * </ol>
+ * 出金は DigitalBank#withdraw(WithdrawRequest) を使う（レシートは出力しない。変更ログなしのメモリ上の銀行）。
+ * 口座番号は 6 桁のため、口座の総数が上限を超える場合は、超えた分の顧客は口座なしで登録する。
+ * 出金で残りの枠が1回分を下回った口座は、計測の外で初期の状態に戻す（入金・返済に相当する）。
+ * そのため、アクセスの集中する口座が枠を使い切って拒否が増えることはなく、拒否率は要求の金額と口座の初期残高の組み合わせを反映する。
+ *
+ * 使い方: java asm03.benchmark.LoadGenerator [顧客数] [ローン口座の割合(%)] [スレッド数] [計測秒数] [Zipf 指数]
+ *                                            [顧客あたりの口座数]
+ * 例    : java asm03.benchmark.LoadGenerator 5000000 30 8 30 1.1 1
+ */
+public class LoadGenerator {
+
+    // 普通預金口座の初期残高の範囲（VND）
+    private static final long MIN_INITIAL_BALANCE = 1_000_000;
+    private static final long MAX_INITIAL_BALANCE = 200_000_000;
+
+    // ローン口座の出金額の範囲（VND）
+    private static final long MIN_LOAN_AMOUNT = 50_000;
+    private static final long MAX_LOAN_AMOUNT = 5_000_000;
+
+    // 残りの枠がこれを下回った口座は初期の状態に戻す（1回の出金の最大額と、出金後に残す額の合計）
+    private static final long SAVINGS_REFILL_THRESHOLD =
+            SavingsAccount.SAVINGS_ACCOUNT_MAX_WITHDRAW + SavingsAccount.SAVINGS_ACCOUNT_MIN_REMAINING;
+    private static final long LOAN_REFILL_THRESHOLD = Money.ofUnits(MAX_LOAN_AMOUNT)
+            + Money.ofUnits(MAX_LOAN_AMOUNT) * LoanAccount.LOAN_ACCOUNT_WITHDRAW_FEE_BPS / 10_000
+            + LoanAccount.LOAN_ACCOUNT_MIN_REMAINING_LIMIT;
+
+    public static void main(String[] args) throws InterruptedException {
+        int customerCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int loanPercent = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        double exponent = args.length > 4 ? Double.parseDouble(args[4]) : 1.0;
+        int accountsPerCustomer = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+        if (customerCount <= 0 || accountsPerCustomer <= 0) {
+            throw new IllegalArgumentException("顧客数と顧客あたりの口座数は1以上で指定してください。");
+        }
+
+        System.out.printf("顧客数=%,d 口座数/顧客=%d ローン口座=%d%% スレッド=%d 計測=%d秒 Zipf指数=%.2f%n",
+                customerCount, accountsPerCustomer, loanPercent, threads, seconds, exponent);
+
+        long setupStart = System.nanoTime();
+        DigitalBank bank = new DigitalBank();
+        Workload workload = Workload.create(bank, customerCount, accountsPerCustomer, loanPercent, exponent);
+        System.out.printf("データ生成: %,d ms（口座数 %,d）%n",
+                (System.nanoTime() - setupStart) / 1_000_000, workload.accounts().length);
+
+        run(bank, workload, threads, seconds * 1_000L);
+    }
+
+    /* ======================= データ生成 ======================= */
+
+    /**
+     * 負荷の対象（口座ごとの保有者の個人番号・口座・初期残高と、アクセス頻度の累積分布）
+     */
+    private record Workload(String[] ownerIds, Account[] accounts, long[] initialBalances, double[] cumulative) {
+
+        static Workload create(DigitalBank bank, int customerCount, int accountsPerCustomer, int loanPercent,
+                               double exponent) {
+            SplittableRandom random = new SplittableRandom(42);
+            int accountCount = (int) Math.min((long) customerCount * accountsPerCustomer,
+                    AccountNumberAllocator.CAPACITY);
+            String[] ownerIds = new String[accountCount];
+            Account[] accounts = new Account[accountCount];
+            long[] initialBalances = new long[accountCount];
+
+            List<Customer> batch = new ArrayList<>(10_000);
+            int next = 0;
+            for (int i = 0; i < customerCount; i++) {
+                String customerId = citizenId(i);
+                Customer customer = new Customer("CUSTOMER " + i, customerId);
+                for (int j = 0; j < accountsPerCustomer && next < accountCount; j++, next++) {
+                    String accountNumber = bank.allocateAccountNumber();
+                    boolean loan = random.nextInt(100) < loanPercent;
+                    initialBalances[next] = loan
+                            ? 0
+                            : Money.ofUnits(random.nextLong(MIN_INITIAL_BALANCE, MAX_INITIAL_BALANCE));
+                    accounts[next] = loan
+                            ? new LoanAccount(accountNumber, 0)
+                            : new SavingsAccount(accountNumber, initialBalances[next]);
+                    ownerIds[next] = customerId;
+                    customer.addAccount(accounts[next]);
+                }
+                batch.add(customer);
+                if (batch.size() == 10_000) {
+                    bank.addCustomers(batch);
+                    batch.clear();
+                }
+            }
+            bank.addCustomers(batch);
+            return new Workload(ownerIds, accounts, initialBalances, zipf(accountCount, exponent));
+        }
+
+        /**
+         * i 番目の顧客の個人番号（省コード + 通し番号 9 桁。i が異なれば必ず異なる）。
+         * 通し番号は i / 省の数のため、int の範囲の顧客数なら 9 桁に収まる。
+         */
+        private static String citizenId(int i) {
+            int province = CitizenIdDecoder.provinceCodeAt(i % CitizenIdDecoder.provinceCount());
+            long serial = i / CitizenIdDecoder.provinceCount();
+            char[] digits = new char[CitizenIdDecoder.LENGTH];
+            for (int d = 2; d >= 0; d--, province /= 10) {
+                digits[d] = (char) ('0' + province % 10);
+            }
+            for (int d = CitizenIdDecoder.LENGTH - 1; d >= 3; d--, serial /= 10) {
+                digits[d] = (char) ('0' + serial % 10);
+            }
+            return new String(digits);
+        }
+
+        /**
+         * 順位 k（0 始まり）の口座が選ばれる確率を 1 / (k + 1)^exponent に比例させた累積分布。
+         */
+        private static double[] zipf(int n, double exponent) {
+            double[] cumulative = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cumulative[k] /= sum;
+            }
+            return cumulative;
+        }
+
+        /**
+         * 累積分布から口座の位置を選ぶ（二分探索）。
+         */
+        int pick(SplittableRandom random) {
+            double u = random.nextDouble();
+            int low = 0;
+            int high = cumulative.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] < u) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 口座の種類に応じた出金額（最小単位）。普通預金は 10,000 単位。
+         */
+        long amount(int index, SplittableRandom random) {
+            if (accounts[index].isLiability()) {
+                return Money.ofUnits(random.nextLong(MIN_LOAN_AMOUNT, MAX_LOAN_AMOUNT + 1));
+            }
+            long steps = (SavingsAccount.SAVINGS_ACCOUNT_MAX_WITHDRAW - SavingsAccount.SAVINGS_ACCOUNT_MIN_WITHDRAW)
+                    / SavingsAccount.SAVINGS_ACCOUNT_WITHDRAW_STEP;
+            return SavingsAccount.SAVINGS_ACCOUNT_MIN_WITHDRAW
+                    + random.nextLong(steps + 1) * SavingsAccount.SAVINGS_ACCOUNT_WITHDRAW_STEP;
+        }
+
+        /**
+         * 残りの枠が1回分の出金を下回った口座を初期の状態に戻す（普通預金は初期残高、ローンは利用額 0）。
+         * 初期残高がもともと1回分に満たない普通預金口座は、初期残高を下回った場合だけ戻す。
+         * 枠は口座のロック内で確認し直すため、他のスレッドの出金と競合しても二重には戻さない。
+         *
+         * @return 戻した場合は true
+         */
+        boolean refillIfLow(int index) {
+            Account account = accounts[index];
+            if (!isLow(index)) {
+                return false;
+            }
+            account.getLock().lock();
+            try {
+                if (!isLow(index)) {
+                    return false;
+                }
+                account.setBalance(initialBalances[index]);
+                return true;
+            } finally {
+                account.getLock().unlock();
+            }
+        }
+
+        private boolean isLow(int index) {
+            Account account = accounts[index];
+            return account.isLiability()
+                    ? LoanAccount.LOAN_ACCOUNT_MAX_BALANCE - account.getBalance() < LOAN_REFILL_THRESHOLD
+                    : account.getBalance() < Math.min(initialBalances[index], SAVINGS_REFILL_THRESHOLD);
+        }
+    }
+
+    /* ======================= 負荷の実行 ======================= */
+
+    private static void run(DigitalBank bank, Workload workload, int threads, long millis)
+            throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram("withdraw");
+        LongAdder refills = new LongAdder();
+        LongAdder[] results = new LongAdder[WithdrawResult.values().length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new LongAdder();
+        }
+
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] window = new long[2];   // [開始時刻, 終了時刻]（ナノ秒）
+
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(1_000 + t);
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                    long deadline = window[1];
+                    while (System.nanoTime() < deadline) {
+                        int index = workload.pick(random);
+                        WithdrawRequest request = new WithdrawRequest(workload.ownerIds()[index],
+                                workload.accounts()[index].getAccountNumber(), workload.amount(index, random));
+                        long begin = System.nanoTime();
+                        WithdrawResult result = bank.withdraw(request);
+                        latency.recordSince(begin);
+                        results[result.ordinal()].increment();
+                        if (workload.refillIfLow(index)) {   // 計測の外で枠を戻す
+                            refills.increment();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        ready.await();
+        BankMetrics.global().sample();   // 銀行側の計測値の区間を負荷の実行期間に合わせる
+        window[0] = System.nanoTime();
+        window[1] = window[0] + millis * 1_000_000;
+        start.countDown();   // window の書き込みは countDown → await で各スレッドから見える
+        done.await();
+        long elapsed = System.nanoTime() - window[0];
+        BankMetrics.global().sample();
+
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        long total = snapshot.count();
+        long rejected = total - results[WithdrawResult.SUCCESS.ordinal()].sum();
+
+        System.out.println("----------------------------------------------");
+        System.out.printf("出金件数      : %,d%n", total);
+        System.out.printf("スループット  : %,.0f 件/秒%n", total * 1e9 / elapsed);
+        System.out.printf("処理時間(µs)  : p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+                snapshot.p50() / 1e3, snapshot.p90() / 1e3, snapshot.p99() / 1e3,
+                snapshot.p999() / 1e3, snapshot.max() / 1e3);
+        System.out.printf("拒否率        : %.2f%%%n", total == 0 ? 0 : rejected * 100.0 / total);
+        System.out.printf("枠の補充      : %,d 回%n", refills.sum());
+        for (WithdrawResult result : WithdrawResult.values()) {
+            System.out.printf("  %-18s : %,d%n", result.name(), results[result.ordinal()].sum());
+        }
+        System.out.println("----------------------------------------------");
+        System.out.print(BankMetrics.global().getReport());
+    }
+}
@@ -0,0 +1,76 @@
+package asm03.benchmark;
+
+import asm02.models.Customer;
+import asm02.models.Money;
+import asm03.models.DigitalBank;
+import asm03.models.SavingsAccount;
+
+import java.util.SplittableRandom;
+
+/**
+ * DigitalBank.transfer の競合時の計測。
+ * 少数の口座（ホットな口座）の間で無作為に振替を繰り返し、口座数とスレッド数を変えたときの
+ * 1秒あたりの振替件数を表示する。計測後に全口座の残高の合計が変わっていないこと（資金が消えたり
+ * 増えたりしていないこと）を確認する。デッドロックした場合は計測が終わらない。
+ *
+ * 使い方: java asm03.benchmark.TransferContentionBenchmark [最大スレッド数] [計測秒数]
+ */
+public class TransferContentionBenchmark {
+
+    private static final String CUSTOMER_ID = "001200000000";
+
+    // 1回の振替額
+    private static final long AMOUNT = Money.ofUnits(10_000);
+
+    // 計測中に最低残高を下回らないだけの初期残高
+    private static final long INITIAL_BALANCE = Money.ofUnits(1_000_000_000_000L);
+
+    // 振替の対象にする口座数（少ないほど競合が激しい）
+    private static final int[] ACCOUNT_COUNTS = {2, 8, 64, 1_024};
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        BenchmarkRunner runner = new BenchmarkRunner(1_000, seconds * 1_000);
+
+        System.out.printf("%-8s | %-8s | %15s | %12s | %s%n", "口座数", "スレッド", "振替件数/秒", "バイト/件", "残高合計");
+        System.out.println("---------+----------+-----------------+--------------+---------");
+        for (int accounts : ACCOUNT_COUNTS) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                DigitalBank bank = new DigitalBank();
+                String[] numbers = openAccounts(bank, accounts);
+                SplittableRandom[] randoms = new SplittableRandom[threads];
+                for (int t = 0; t < threads; t++) {
+                    randoms[t] = new SplittableRandom(42 + t);
+                }
+
+                BenchmarkRunner.Result result = runner.measure(threads, (thread, iteration) -> {
+                    SplittableRandom random = randoms[thread];
+                    int from = random.nextInt(numbers.length);
+                    int to = random.nextInt(numbers.length - 1);
+                    if (to >= from) to++;   // 振替元と異なる口座を選ぶ
+                    return bank.transfer(CUSTOMER_ID, numbers[from], numbers[to], AMOUNT).ordinal();
+                });
+
+                long total = bank.getCustomerById(CUSTOMER_ID).getTotalBalance();
+                boolean conserved = total == INITIAL_BALANCE * accounts;
+                System.out.printf("%8d | %8d | %,15.0f | %12.1f | %s%n", accounts, threads,
+                        result.opsPerSecond(), result.bytesPerOperation(), conserved ? "OK" : "NG " + Money.format(total));
+            }
+        }
+    }
+
+    /**
+     * 1人の顧客に指定数の普通預金口座を開設し、口座番号の一覧を返す。
+     */
+    private static String[] openAccounts(DigitalBank bank, int count) {
+        Customer customer = new Customer("BENCHMARK", CUSTOMER_ID);
+        bank.addCustomer(customer);
+        String[] numbers = new String[count];
+        for (int i = 0; i < count; i++) {
+            numbers[i] = bank.allocateAccountNumber();
+            customer.addAccount(new SavingsAccount(numbers[i], INITIAL_BALANCE));
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,108 @@
+package asm03.benchmark;
+
+import asm02.models.Customer;
+import asm02.models.Money;
+import asm03.models.DigitalBank;
+import asm03.models.ReceiptSink;
+import asm03.models.SavingsAccount;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DigitalBank.withdraw のスループット計測。
+ * スレッドごとに別々の口座へ出金し、スレッド数 1, 2, 4, ... と増やしたときの
+ * 1秒あたりの出金件数を表示する（口座が異なれば線形に近く伸びることを確認する）。
+ *
+ * 使い方: java asm03.benchmark.WithdrawThroughputBenchmark [最大スレッド数] [計測秒数]
+ */
+public class WithdrawThroughputBenchmark {
+
+    // 1回の出金額（SavingsAccount の条件を満たす最小額）
+    private static final long AMOUNT = Money.ofUnits(50_000);
+
+    // 計測中に残高が尽きないだけの初期残高
+    private static final long INITIAL_BALANCE = Money.ofUnits(1_000_000_000_000L);
+
+    // 1スレッドあたりの口座数
+    private static final int ACCOUNTS_PER_THREAD = 16;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        PrintStream console = System.out;
+        console.printf("%-8s | %15s | %10s%n", "スレッド", "出金件数/秒", "倍率");
+        console.println("---------+-----------------+-----------");
+
+        double baseline = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // レシート出力が計測を支配しないよう、計測中は標準出力を捨てる
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            double opsPerSecond;
+            try {
+                run(threads, 1);                       // ウォームアップ
+                opsPerSecond = run(threads, seconds);
+            } finally {
+                ReceiptSink.shared().flush();
+                System.setOut(console);
+            }
+            if (baseline == 0) baseline = opsPerSecond;
+            console.printf("%8d | %,15.0f | %9.2fx%n", threads, opsPerSecond, opsPerSecond / baseline);
+        }
+    }
+
+    /**
+     * 指定スレッド数で一定時間出金を繰り返し、1秒あたりの件数を返す。
+     */
+    private static double run(int threads, int seconds) throws InterruptedException {
+        DigitalBank bank = new DigitalBank();
+        String[][] accountNumbers = new String[threads][ACCOUNTS_PER_THREAD];
+        String customerId = "001200000000";
+        Customer customer = new Customer("BENCHMARK", customerId);
+        bank.addCustomer(customer);
+        for (int t = 0; t < threads; t++) {
+            for (int a = 0; a < ACCOUNTS_PER_THREAD; a++) {
+                String number = String.format("%06d", t * ACCOUNTS_PER_THREAD + a);
+                customer.addAccount(new SavingsAccount(number, INITIAL_BALANCE));
+                accountNumbers[t][a] = number;
+            }
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder completed = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            String[] own = accountNumbers[t];
+            workers[t] = new Thread(() -> {
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (running.get()) {
+                    bank.withdraw(customerId, own[(int) (count % own.length)], AMOUNT);
+                    count++;
+                }
+                completed.add(count);
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        TimeUnit.SECONDS.sleep(seconds);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - begin) / 1e9;
+        return completed.sum() / elapsedSeconds;
+    }
+}
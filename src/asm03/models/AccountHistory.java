@@ -0,0 +1,219 @@
+package asm03.models;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 1つの口座の取引履歴。
+ * 取引そのものは共有の {@link TransactionJournal} に格納し、ここではその口座の行番号だけを保持する。
+ * 追加はこのオブジェクト単位で直列化する（通常は口座のロック下で行う。ホットな口座のロックを取らずに
+ * 受け付けた出金は、ロックを持つスレッドが {@link #recordWithdrawals} でまとめて記録する）。
+ * 読み出しは追加済みの範囲（配列と件数）を固定したビューを通じて、ロックなしで行える。
+ * 取引日時は記録順に単調増加するため、期間の検索は二分探索で開始位置を求められる。
+ */
+public final class AccountHistory {
+
+    private final TransactionJournal journal;
+
+    // 条件に一致しない取引を読み飛ばす件数の上限（1ページの件数に対する倍率）
+    private static final int SCAN_LIMIT_FACTOR = 64;
+
+    // この口座の取引の行番号（追加順）
+    private long[] rows = new long[4];
+    private volatile int size;
+
+    // 最後に追加した取引日時（日時が逆行しないように補正するため）
+    private long lastTime;
+
+    public AccountHistory(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 取引を記録する。
+     *
+     * @param accountNumber 口座番号
+     * @param amount        取引金額（最小単位）
+     * @param status        取引結果
+     * @param type          取引種類
+     * @param balanceDelta  この取引による残高の増減（最小単位。失敗した取引は 0）
+     * @return 発行した取引ID
+     */
+    public synchronized long record(String accountNumber, long amount, boolean status, TransactionType type,
+                                    long balanceDelta) {
+        long id = TransactionIdGenerator.nextId();
+        long time = Math.max(TransactionIdGenerator.timestampOf(id), lastTime);
+        int sequence = size;
+        long row = journal.append(TransactionJournal.accountKey(accountNumber), id, amount, time, status, type);
+        append(row, time);
+
+        JournalListener listener = journal.listener();
+        if (listener != null) {
+            listener.onRecorded(accountNumber, sequence, id, amount, time, status, type, balanceDelta);
+        }
+        return id;
+    }
+
+    /**
+     * 成功した出金をまとめて記録する（口座のロック下で呼び出す）。
+     * 直列化とリスナーへの通知はまとめて1回で行うため、1件ずつ {@link #record} するより奪い合いが少ない。
+     *
+     * @param accountNumber 口座番号
+     * @param amounts       出金額（最小単位）
+     * @param balanceDeltas 各出金による残高の増減（最小単位）
+     * @param count         件数
+     */
+    synchronized void recordWithdrawals(String accountNumber, long[] amounts, long[] balanceDeltas, int count) {
+        int accountKey = TransactionJournal.accountKey(accountNumber);
+        int firstSequence = size;
+        long[] ids = new long[count];
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            long id = TransactionIdGenerator.nextId();
+            long time = Math.max(TransactionIdGenerator.timestampOf(id), lastTime);
+            append(journal.append(accountKey, id, amounts[i], time, true, TransactionType.WITHDRAW), time);
+            ids[i] = id;
+            times[i] = time;
+        }
+
+        JournalListener listener = journal.listener();
+        if (listener != null) {
+            listener.onWithdrawalsRecorded(accountNumber, firstSequence, ids, amounts, times, balanceDeltas, count);
+        }
+    }
+
+    /**
+     * 永続化された取引を復元する（口座のロック下、または復元処理中に呼び出すこと）。
+     * リスナーへの通知は行わない。
+     */
+    public synchronized void restore(String accountNumber, long id, long amount, long time, boolean status,
+                                     TransactionType type) {
+        long restoredTime = Math.max(time, lastTime);   // 期間検索のため、日時の単調増加を保つ
+        append(journal.append(TransactionJournal.accountKey(accountNumber), id, amount, restoredTime, status, type),
+                restoredTime);
+    }
+
+    private void append(long row, long time) {
+        int n = size;
+        if (n == rows.length) {
+            rows = Arrays.copyOf(rows, n * 2);
+        }
+        rows[n] = row;
+        lastTime = time;
+        size = n + 1;
+    }
+
+    /**
+     * 取引が格納されているジャーナルを返す。
+     */
+    public TransactionJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * index 番目（0 始まり、記録順）の取引のジャーナル上の行番号を返す。
+     */
+    public long rowAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return rows[index];
+    }
+
+    /**
+     * 記録済みの取引件数を返す。
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 取引履歴をページ単位で検索する（古い順）。
+     * 期間の開始位置は二分探索で求めるため、処理量は履歴全体ではなくページの大きさに比例する。
+     * 取引結果で絞り込む場合、1回の呼び出しで読み飛ばす件数には上限があり、
+     * 上限に達した場合は件数が足りないページと続きのカーソルを返す。
+     *
+     * @param accountNumber 口座番号
+     * @param query         検索条件
+     * @param cursor        前のページの {@link HistoryPage#nextCursor()}（先頭ページは {@link HistoryPage#FIRST}）
+     * @return 検索結果のページ
+     * @throws IllegalArgumentException カーソルが 0 未満、または履歴の件数を超える場合
+     */
+    public HistoryPage query(String accountNumber, HistoryQuery query, long cursor) {
+        int n = size;
+        long[] r = rows;
+        if (cursor < HistoryPage.FIRST || cursor > n) {
+            throw new IllegalArgumentException("カーソルが不正です。");
+        }
+
+        int start = (int) Math.max(cursor, lowerBound(r, n, query.fromTime()));
+        int end = lowerBound(r, n, query.toTime());
+        int pageSize = query.pageSize();
+        long scanLimit = (long) pageSize * SCAN_LIMIT_FACTOR;
+
+        List<Transaction> page = new ArrayList<>(Math.min(pageSize, Math.max(0, end - start)));
+        int i = start;
+        for (long scanned = 0; i < end && page.size() < pageSize && scanned < scanLimit; i++, scanned++) {
+            if (query.status().accepts(journal.status(r[i]))) {
+                page.add(journal.toTransaction(r[i], accountNumber));
+            }
+        }
+        return new HistoryPage(page, i < end ? i : HistoryPage.END);
+    }
+
+    /**
+     * 取引日時が time 以上の最初の位置を返す（なければ n）。
+     */
+    private int lowerBound(long[] r, int n, long time) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (journal.time(r[middle]) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 取引履歴を List として返す。
+     * 呼び出し時点までの取引を対象とする軽量なビューで、要素は参照されたときにジャーナルから生成する。
+     */
+    public List<Transaction> view(String accountNumber) {
+        int n = size;
+        return new View(journal, rows, n, accountNumber);
+    }
+
+    private static final class View extends AbstractList<Transaction> implements RandomAccess {
+        private final TransactionJournal journal;
+        private final long[] rows;
+        private final int size;
+        private final String accountNumber;
+
+        View(TransactionJournal journal, long[] rows, int size, String accountNumber) {
+            this.journal = journal;
+            this.rows = rows;
+            this.size = size;
+            this.accountNumber = accountNumber;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return journal.toTransaction(rows[index], accountNumber);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package asm03.models;
+
+import asm02.models.Account;
+
+/**
+ * 口座の種類。永続化（変更ログ・スナップショット）や一括取込で口座の種類を表すために使う。
+ * ordinal をファイルに保存するため、定数は末尾にのみ追加すること。
+ */
+public enum AccountKind {
+    PLAIN("通常口座"),
+    SAVINGS("普通預金口座"),
+    LOAN("ローン口座");
+
+    private static final AccountKind[] VALUES = values();
+
+    private final String label;
+
+    AccountKind(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * 口座インスタンスの種類を返す。
+     */
+    public static AccountKind of(Account account) {
+        if (account instanceof SavingsAccount) return SAVINGS;
+        if (account instanceof LoanAccount) return LOAN;
+        return PLAIN;
+    }
+
+    /**
+     * 保存されたコードから種類を復元する。
+     *
+     * @throws IllegalArgumentException 不明なコードの場合
+     */
+    public static AccountKind ofCode(int code) {
+        if (code < 0 || code >= VALUES.length) {
+            throw new IllegalArgumentException("不明な口座種類です: " + code);
+        }
+        return VALUES[code];
+    }
+
+    /**
+     * この種類の口座を生成する。
+     *
+     * @param accountNumber 口座番号
+     * @param balance       残高（ローン口座の場合は利用額。最小単位）
+     */
+    public Account create(String accountNumber, long balance) {
+        return switch (this) {
+            case PLAIN -> new Account(accountNumber, balance);
+            case SAVINGS -> new SavingsAccount(accountNumber, balance);
+            case LOAN -> new LoanAccount(accountNumber, balance);
+        };
+    }
+}
@@ -0,0 +1,177 @@
+package asm03.models;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 口座番号（6桁）の割り当て管理。
+ * 000000〜999999 の100万個の番号を1ビットずつのビットマップ（約122KB）で管理する。
+ * <ul>
+ *   <li>使用中かどうかの判定は O(1)</li>
+ *   <li>割り当て・予約・解放は CAS で行うため、複数スレッドから同時に呼び出せる</li>
+ *   <li>空き番号の検索は、最後に空きが見つかったワードから順に 64 番号単位で行う</li>
+ * </ul>
+ */
+public final class AccountNumberAllocator {
+
+    /** 管理する番号の数（6桁） */
+    public static final int CAPACITY = 1_000_000;
+
+    private static final int WORDS = (CAPACITY + 63) >>> 6;
+
+    // 最後のワードのうち、範囲内の番号に対応するビット
+    private static final long LAST_WORD_MASK = CAPACITY % 64 == 0 ? -1L : (1L << (CAPACITY % 64)) - 1;
+
+    private final AtomicLongArray bits = new AtomicLongArray(WORDS);
+
+    // 使用中の番号の数
+    private final AtomicInteger used = new AtomicInteger();
+
+    // 空き番号の検索を始めるワード
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * 空いている番号を1つ割り当てる。
+     *
+     * @return 割り当てた番号（0〜999999）
+     * @throws IllegalStateException 空き番号がない場合
+     */
+    public int allocate() {
+        int start = cursor.get();
+        for (int i = 0; i < WORDS; i++) {
+            int word = start + i;
+            if (word >= WORDS) word -= WORDS;
+            long mask = word == WORDS - 1 ? LAST_WORD_MASK : -1L;
+            long current = bits.get(word);
+            while ((current & mask) != mask) {
+                long free = ~current & mask;
+                long bit = free & -free;   // 一番下の空きビット
+                long witness = bits.compareAndExchange(word, current, current | bit);
+                if (witness == current) {
+                    used.incrementAndGet();
+                    if (word != start) cursor.set(word);
+                    return (word << 6) + Long.numberOfTrailingZeros(bit);
+                }
+                current = witness;   // 他のスレッドが同じワードを更新した
+            }
+        }
+        throw new IllegalStateException("割り当て可能な口座番号がありません。");
+    }
+
+    /**
+     * 空いている番号を1つ割り当て、6桁の文字列で返す。
+     *
+     * @throws IllegalStateException 空き番号がない場合
+     */
+    public String allocateNumber() {
+        return format(allocate());
+    }
+
+    /**
+     * 指定した番号を使用中にする（手入力された番号や、復元した口座の登録用）。
+     *
+     * @return 新たに使用中にした場合は true、すでに使用中だった場合は false
+     */
+    public boolean reserve(int number) {
+        checkRange(number);
+        int word = number >>> 6;
+        long bit = 1L << number;
+        long current = bits.get(word);
+        while ((current & bit) == 0) {
+            long witness = bits.compareAndExchange(word, current, current | bit);
+            if (witness == current) {
+                used.incrementAndGet();
+                return true;
+            }
+            current = witness;
+        }
+        return false;
+    }
+
+    /**
+     * 番号を空きに戻す（割り当てた番号が使われなかった場合など）。
+     *
+     * @return 空きに戻した場合は true、もともと空いていた場合は false
+     */
+    public boolean release(int number) {
+        checkRange(number);
+        int word = number >>> 6;
+        long bit = 1L << number;
+        long current = bits.get(word);
+        while ((current & bit) != 0) {
+            long witness = bits.compareAndExchange(word, current, current & ~bit);
+            if (witness == current) {
+                used.decrementAndGet();
+                return true;
+            }
+            current = witness;
+        }
+        return false;
+    }
+
+    /**
+     * 番号が使用中かどうか
+     */
+    public boolean isInUse(int number) {
+        if (number < 0 || number >= CAPACITY) return false;
+        return (bits.get(number >>> 6) & (1L << number)) != 0;
+    }
+
+    /**
+     * 使用中の番号の数
+     */
+    public int usedCount() {
+        return used.get();
+    }
+
+    /**
+     * 空いている番号の数
+     */
+    public int freeCount() {
+        return CAPACITY - used.get();
+    }
+
+    /**
+     * 使用率（0.0〜1.0）
+     */
+    public double utilization() {
+        return (double) used.get() / CAPACITY;
+    }
+
+    /* ======================= 番号と文字列の変換 ======================= */
+
+    /**
+     * 6桁の数字の文字列を番号に変換する。
+     *
+     * @return 番号、6桁の数字でない場合は -1
+     */
+    public static int parse(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() != 6) return -1;
+        int number = 0;
+        for (int i = 0; i < 6; i++) {
+            int digit = accountNumber.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            number = number * 10 + digit;
+        }
+        return number;
+    }
+
+    /**
+     * 番号を6桁の文字列に変換する（先頭は0埋め）。
+     */
+    public static String format(int number) {
+        checkRange(number);
+        char[] digits = new char[6];
+        for (int i = 5; i >= 0; i--) {
+            digits[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return new String(digits);
+    }
+
+    private static void checkRange(int number) {
+        if (number < 0 || number >= CAPACITY) {
+            throw new IllegalArgumentException("口座番号の範囲外です: " + number);
+        }
+    }
+}
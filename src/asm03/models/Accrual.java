@@ -0,0 +1,30 @@
+package asm03.models;
+
+/**
+ * 日次の利息計上（{@link EndOfDayAccrual}）のためのインターフェース。
+ * 普通預金口座は受取利息として残高が増え、ローン口座は支払利息として利用額が増える。
+ * どちらの場合も計上額だけ口座の残高（balance）が増える。
+ * 金額はすべて最小単位（{@link asm02.models.Money} 参照）の long で扱います。
+ */
+public interface Accrual extends HistoryProvider {
+
+    /**
+     * 現在の残高に対する1日分の利息を返す（口座のロック下で呼び出せば確定値になる）。
+     *
+     * @return 計上額（最小単位。0 の場合は計上しない）
+     */
+    long dailyAccrual();
+
+    /**
+     * 最後に利息を計上した（または計上の対象として確認した）営業日（エポック日。未計上の場合は Long.MIN_VALUE）。
+     * 口座のロック下で読み書きする。
+     */
+    long getLastAccrualDay();
+
+    /**
+     * 利息の計上を済ませた営業日を記録する（口座のロック下、または読み込み時に呼び出す）。
+     *
+     * @param epochDay 営業日（エポック日）
+     */
+    void setLastAccrualDay(long epochDay);
+}
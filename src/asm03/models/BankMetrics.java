@@ -0,0 +1,344 @@
+package asm03.models;
+
+import asm02.models.Account;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 出金・検索処理の計測値（処理時間のヒストグラムと件数のカウンタ）。
+ * 記録はロックを使わず、{@link LatencyHistogram} と LongAdder への加算だけで行う。
+ * <ul>
+ *   <li>処理時間：出金全体・出金可否の判定・顧客の検索・口座の検索</li>
+ *   <li>件数：出金の成功 / 失敗を口座の種類（{@link AccountKind}）と会員区分（NORMAL / PREMIUM）ごとに数える</li>
+ *   <li>スループット：前回の区間集計からの出金件数 / 経過時間</li>
+ * </ul>
+ * 区間集計（{@link #sample()}）は定期的な集計処理だけが行い、直近の区間の処理時間とスループットを保持する。
+ * 読み出し（JMX・レポート）は保持済みの値を返すだけで、計測値を変更しない。
+ * JMX（{@link #registerMBean()}）と定期的な出力（{@link #startPeriodicDump}）で参照できる。
+ * JMX に登録した場合は {@value #SAMPLE_INTERVAL_SECONDS} 秒ごとに区間集計する。
+ */
+public final class BankMetrics implements BankMetricsMBean {
+
+    private static final BankMetrics GLOBAL = new BankMetrics();
+
+    /** JMX に登録する名前 */
+    public static final String OBJECT_NAME = "asm03:type=BankMetrics";
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** JMX に登録した場合の区間集計の間隔（秒） */
+    public static final long SAMPLE_INTERVAL_SECONDS = 10;
+
+    private final LatencyHistogram withdraw = new LatencyHistogram("withdraw");
+    private final LatencyHistogram acceptanceCheck = new LatencyHistogram("isAccepted");
+    private final LatencyHistogram customerLookup = new LatencyHistogram("findCustomerById");
+    private final LatencyHistogram accountLookup = new LatencyHistogram("findAccountByNumber");
+    private final LatencyHistogram transfer = new LatencyHistogram("transfer");
+    private final LatencyHistogram[] histograms = {withdraw, acceptanceCheck, customerLookup, accountLookup, transfer};
+
+    // [口座の種類][会員区分 0=NORMAL,1=PREMIUM][結果 0=失敗,1=成功]
+    private final LongAdder[][][] outcomes =
+            new LongAdder[AccountKind.values().length][2][2];
+
+    /**
+     * 区間集計の結果
+     *
+     * @param seconds            区間の長さ（秒）
+     * @param withdrawsPerSecond 区間の出金スループット（件/秒）
+     * @param latencies          区間の処理時間（histograms と同じ順）
+     */
+    private record Sample(double seconds, double withdrawsPerSecond, LatencyHistogram.Snapshot[] latencies) {
+    }
+
+    // 直近の区間集計の結果（まだ集計していない場合は null）
+    private volatile Sample lastSample;
+
+    // 前回の区間集計の時点の出金件数と時刻（sample の中でだけ更新する）
+    private long sampledCount;
+    private long sampledNanos = System.nanoTime();
+
+    // JMX 用の区間集計（registerMBean で1回だけ開始する）
+    private static ScheduledExecutorService sampler;
+
+    private BankMetrics() {
+        for (LongAdder[][] byKind : outcomes) {
+            for (LongAdder[] byPremium : byKind) {
+                byPremium[0] = new LongAdder();
+                byPremium[1] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * アプリケーション全体で共有する計測値
+     */
+    public static BankMetrics global() {
+        return GLOBAL;
+    }
+
+    /* ======================= 記録 ======================= */
+
+    public LatencyHistogram withdrawLatency() {
+        return withdraw;
+    }
+
+    public LatencyHistogram acceptanceCheckLatency() {
+        return acceptanceCheck;
+    }
+
+    public LatencyHistogram customerLookupLatency() {
+        return customerLookup;
+    }
+
+    public LatencyHistogram accountLookupLatency() {
+        return accountLookup;
+    }
+
+    public LatencyHistogram transferLatency() {
+        return transfer;
+    }
+
+    /**
+     * 出金の結果を数える。
+     *
+     * @param account 出金した口座
+     * @param premium 出金前にプレミアム口座だったか
+     * @param success 出金に成功したか
+     */
+    public void recordOutcome(Account account, boolean premium, boolean success) {
+        outcomes[AccountKind.of(account).ordinal()][premium ? 1 : 0][success ? 1 : 0].increment();
+    }
+
+    /* ======================= 読み出し ======================= */
+
+    public long count(AccountKind kind, boolean premium, boolean success) {
+        return outcomes[kind.ordinal()][premium ? 1 : 0][success ? 1 : 0].sum();
+    }
+
+    private long countByKind(AccountKind kind, boolean success) {
+        return count(kind, false, success) + count(kind, true, success);
+    }
+
+    private long countByPremium(boolean premium, boolean success) {
+        long sum = 0;
+        for (AccountKind kind : AccountKind.values()) {
+            sum += count(kind, premium, success);
+        }
+        return sum;
+    }
+
+    @Override
+    public long getWithdrawCount() {
+        return withdraw.snapshot().count();
+    }
+
+    @Override
+    public long getWithdrawP50Nanos() {
+        LatencyHistogram.Snapshot latest = latest(withdraw);
+        return latest == null ? 0 : latest.p50();
+    }
+
+    @Override
+    public long getWithdrawP99Nanos() {
+        LatencyHistogram.Snapshot latest = latest(withdraw);
+        return latest == null ? 0 : latest.p99();
+    }
+
+    @Override
+    public long getWithdrawMaxNanos() {
+        LatencyHistogram.Snapshot latest = latest(withdraw);
+        return latest == null ? 0 : latest.max();
+    }
+
+    @Override
+    public long getAcceptanceCheckP99Nanos() {
+        LatencyHistogram.Snapshot latest = latest(acceptanceCheck);
+        return latest == null ? 0 : latest.p99();
+    }
+
+    @Override
+    public long getCustomerLookupP99Nanos() {
+        LatencyHistogram.Snapshot latest = latest(customerLookup);
+        return latest == null ? 0 : latest.p99();
+    }
+
+    @Override
+    public long getAccountLookupP99Nanos() {
+        LatencyHistogram.Snapshot latest = latest(accountLookup);
+        return latest == null ? 0 : latest.p99();
+    }
+
+    /**
+     * 直近の区間集計でのヒストグラムの集計結果（まだ集計していない場合は null）
+     */
+    private LatencyHistogram.Snapshot latest(LatencyHistogram histogram) {
+        Sample sample = lastSample;
+        if (sample == null) return null;
+        for (int i = 0; i < histograms.length; i++) {
+            if (histograms[i] == histogram) {
+                return sample.latencies()[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long getSavingsAccepted() {
+        return countByKind(AccountKind.SAVINGS, true);
+    }
+
+    @Override
+    public long getSavingsRejected() {
+        return countByKind(AccountKind.SAVINGS, false);
+    }
+
+    @Override
+    public long getLoanAccepted() {
+        return countByKind(AccountKind.LOAN, true);
+    }
+
+    @Override
+    public long getLoanRejected() {
+        return countByKind(AccountKind.LOAN, false);
+    }
+
+    @Override
+    public long getPremiumAccepted() {
+        return countByPremium(true, true);
+    }
+
+    @Override
+    public long getPremiumRejected() {
+        return countByPremium(true, false);
+    }
+
+    @Override
+    public double getRejectRatio() {
+        long rejected = countByPremium(false, false) + countByPremium(true, false);
+        long total = rejected + countByPremium(false, true) + countByPremium(true, true);
+        return total == 0 ? 0 : (double) rejected / total;
+    }
+
+    /**
+     * 直近の区間の出金スループット（件/秒。まだ区間集計していない場合は 0）
+     */
+    @Override
+    public double getWithdrawsPerSecond() {
+        Sample sample = lastSample;
+        return sample == null ? 0 : sample.withdrawsPerSecond();
+    }
+
+    /**
+     * 前回の区間集計からの処理時間とスループットを集計し、直近の値として保持する。
+     * 定期的な集計処理（{@link #startPeriodicDump}・JMX 用の集計）からだけ呼び出す。
+     */
+    public synchronized void sample() {
+        long now = System.nanoTime();
+        LatencyHistogram.Snapshot[] latencies = new LatencyHistogram.Snapshot[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            latencies[i] = histograms[i].intervalSnapshot();
+        }
+        long count = withdraw.snapshot().count();
+        double seconds = (now - sampledNanos) / 1e9;
+        double perSecond = seconds <= 0 ? 0 : (count - sampledCount) / seconds;
+        sampledCount = count;
+        sampledNanos = now;
+        lastSample = new Sample(seconds, perSecond, latencies);
+    }
+
+    /**
+     * 現在の計測値を整形して返す（起動からの累計と、直近の区間集計の結果）。
+     */
+    @Override
+    public String getReport() {
+        StringBuilder out = new StringBuilder(2048);
+        String separator = System.lineSeparator();
+        out.append("=== 計測値 ").append(LocalDateTime.now().format(TIME_FORMAT)).append(" ===").append(separator);
+        out.append("--- 累計 ---").append(separator);
+        for (LatencyHistogram histogram : histograms) {
+            out.append(histogram.snapshot()).append(separator);
+        }
+        Sample sample = lastSample;
+        if (sample != null) {
+            out.append(String.format("--- 直近 %.1f 秒 ---%n", sample.seconds()));
+            for (LatencyHistogram.Snapshot latency : sample.latencies()) {
+                out.append(latency).append(separator);
+            }
+        }
+        for (AccountKind kind : AccountKind.values()) {
+            out.append(String.format("%-12s NORMAL 成功=%,d 失敗=%,d | PREMIUM 成功=%,d 失敗=%,d%n",
+                    kind.name(),
+                    count(kind, false, true), count(kind, false, false),
+                    count(kind, true, true), count(kind, true, false)));
+        }
+        out.append(String.format("拒否率=%.2f%% 出金スループット=%,.0f 件/秒%n",
+                getRejectRatio() * 100, getWithdrawsPerSecond()));
+        return out.toString();
+    }
+
+    /* ======================= 公開 ======================= */
+
+    /**
+     * JMX の MBean として登録し、区間集計を開始する（登録済みの場合は何もしない）。
+     */
+    public static synchronized void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(GLOBAL, name);
+            }
+        } catch (JMException e) {
+            System.err.println("計測値を JMX に登録できませんでした: " + e.getMessage());
+        }
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "metrics-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sampler.scheduleAtFixedRate(GLOBAL::sample,
+                    SAMPLE_INTERVAL_SECONDS, SAMPLE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 一定間隔で区間集計し、計測値を出力する。
+     * JMX 用の区間集計と併用した場合、各区間は直前のどちらかの集計からの差分になる。
+     *
+     * @param out             出力先
+     * @param intervalSeconds 出力間隔（秒）
+     * @return close() で出力を停止する
+     */
+    public static Closeable startPeriodicDump(PrintStream out, long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            GLOBAL.sample();
+            out.print(GLOBAL.getReport());
+            out.flush();
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+
+        return () -> {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+}
@@ -0,0 +1,40 @@
+package asm03.models;
+
+/**
+ * JMX に公開する {@link BankMetrics} の属性（時間はナノ秒）。
+ * 件数は起動からの累計、処理時間とスループットは直近の区間集計（{@link BankMetrics#sample()}）の値。
+ */
+public interface BankMetricsMBean {
+
+    long getWithdrawCount();
+
+    long getWithdrawP50Nanos();
+
+    long getWithdrawP99Nanos();
+
+    long getWithdrawMaxNanos();
+
+    long getAcceptanceCheckP99Nanos();
+
+    long getCustomerLookupP99Nanos();
+
+    long getAccountLookupP99Nanos();
+
+    long getSavingsAccepted();
+
+    long getSavingsRejected();
+
+    long getLoanAccepted();
+
+    long getLoanRejected();
+
+    long getPremiumAccepted();
+
+    long getPremiumRejected();
+
+    double getRejectRatio();
+
+    double getWithdrawsPerSecond();
+
+    String getReport();
+}
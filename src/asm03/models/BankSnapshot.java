@@ -0,0 +1,370 @@
+package asm03.models;
+
+import asm02.models.Account;
+import asm02.models.Customer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DigitalBank のバイナリスナップショット。
+ * 顧客・口座（種類・残高）・取引履歴をまとめて1ファイルに書き出し、起動時にメモリマップで読み込む。
+ * 変更ログ（{@link WriteAheadLog}）と組み合わせると、起動時に再生するのはスナップショット以降の記録だけになる。
+ * <pre>
+ * ファイル形式（ビッグエンディアン）:
+ *   [int MAGIC][int VERSION][long 作成日時][long 最終利息計上日（エポック日。未計上は Long.MIN_VALUE）][int 顧客数]
+ *   顧客ごと: [12 byte 個人番号][short 長さ + UTF-8 氏名][int 口座数]
+ *     口座ごと: [int 口座キー][byte 種類][long 残高][long 最終利息計上日][int 取引件数]
+ *               [long × 件数 取引ID][long × 件数 金額][long × 件数 日時][byte × 件数 結果・種類]
+ *   [int END_MAGIC]
+ * </pre>
+ * 取引は列ごとにまとめて格納しているため、読み込みは配列単位の一括コピーで行える。
+ * バージョン 1（最終利息計上日なし）・2（口座ごとの最終利息計上日なし）のファイルも読み込める。
+ * 口座ごとの最終利息計上日がない場合は、銀行の最終利息計上日まで計上済みとみなす。
+ */
+public final class BankSnapshot {
+
+    private static final int MAGIC = 0x44425331;       // "DBS1"
+    private static final int END_MAGIC = 0x454E4431;   // "END1"
+    private static final int VERSION = 3;
+    private static final int VERSION_WITHOUT_ACCOUNT_ACCRUAL_DATE = 2;
+    private static final int VERSION_WITHOUT_ACCRUAL_DATE = 1;
+    private static final int CUSTOMER_ID_LENGTH = 12;
+
+    // 一度にマップする範囲（2GB を超えるファイルも扱えるよう、範囲を区切ってマップし直す）
+    private static final long MAP_WINDOW = 256L << 20;
+
+    private static final int CUSTOMER_BATCH = 10_000;
+
+    /**
+     * 読み込み結果
+     *
+     * @param customers    顧客数
+     * @param accounts     口座数
+     * @param transactions 取引件数
+     * @param millis       読み込みにかかった時間（ミリ秒）
+     */
+    public record LoadResult(long customers, long accounts, long transactions, long millis) {
+    }
+
+    private BankSnapshot() {
+    }
+
+    /* ======================= 書き出し ======================= */
+
+    /**
+     * チェックポイントを取る。
+     * 変更ログを切り替えてからスナップショットを書き出し、書き出しが完了したら切り替え前のログを削除する。
+     *
+     * @param bank 対象の銀行
+     * @param log  変更ログ（使っていない場合は null）
+     * @param path スナップショットのファイル
+     */
+    public static void checkpoint(DigitalBank bank, WriteAheadLog log, Path path) throws IOException {
+        if (log != null) {
+            log.rotate();
+        }
+        write(bank, path);
+        if (log != null) {
+            log.discardRotated();
+        }
+    }
+
+    /**
+     * スナップショットを書き出す。
+     * 一時ファイルに書き込んで fsync した後、既存のファイルと置き換え、ディレクトリを fsync して置き換えを確定させる
+     * （途中で失敗しても既存のファイルは壊れない。戻った時点で、切り替え前のログを削除してもよい）。
+     * 口座ごとに、ロックを取得している間に残高と取引件数を確定させる。
+     */
+    public static void write(DigitalBank bank, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        List<Customer> customers = bank.copyCustomers();
+
+        try (OutputStream file = Files.newOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(bank.lastAccrualDay());
+            out.writeInt(customers.size());
+            for (Customer customer : customers) {
+                writeCustomer(out, customer);
+            }
+            out.writeInt(END_MAGIC);
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        WriteAheadLog.forceDirectory(path);   // 改名が失われたまま切り替え前のログを削除しないようにする
+    }
+
+    private static void writeCustomer(DataOutputStream out, Customer customer) throws IOException {
+        out.write(customer.getCustomerId().getBytes(StandardCharsets.US_ASCII));
+        byte[] name = customer.getName().getBytes(StandardCharsets.UTF_8);
+        out.writeShort(name.length);
+        out.write(name);
+
+        List<Account> accounts = customer.copyAccounts();
+        out.writeInt(accounts.size());
+        for (Account account : accounts) {
+            writeAccount(out, account);
+        }
+    }
+
+    private static void writeAccount(DataOutputStream out, Account account) throws IOException {
+        long balance;
+        long lastAccrualDay;
+        int count;
+        AccountHistory history = account instanceof HistoryProvider provider ? provider.getHistory() : null;
+
+        // 残高・最終利息計上日・取引件数は同じ時点の値にそろえる
+        account.getLock().lock();
+        try {
+            balance = account.getBalance();
+            lastAccrualDay = account instanceof Accrual accrual ? accrual.getLastAccrualDay() : Long.MIN_VALUE;
+            count = history == null ? 0 : history.size();
+        } finally {
+            account.getLock().unlock();
+        }
+
+        out.writeInt(TransactionJournal.accountKey(account.getAccountNumber()));
+        out.writeByte(AccountKind.of(account).ordinal());
+        out.writeLong(balance);
+        out.writeLong(lastAccrualDay);
+        out.writeInt(count);
+        if (count == 0) {
+            return;
+        }
+
+        // 確定済みの行は変更されないため、ロックの外で列ごとに書き出す
+        TransactionJournal journal = history.getJournal();
+        for (int i = 0; i < count; i++) out.writeLong(journal.id(history.rowAt(i)));
+        for (int i = 0; i < count; i++) out.writeLong(journal.amount(history.rowAt(i)));
+        for (int i = 0; i < count; i++) out.writeLong(journal.time(history.rowAt(i)));
+        for (int i = 0; i < count; i++) {
+            long row = history.rowAt(i);
+            out.writeByte((journal.type(row).ordinal() << 1) | (journal.status(row) ? 1 : 0));
+        }
+    }
+
+    /**
+     * 一定間隔でチェックポイントを取るバックグラウンド処理を開始する。
+     *
+     * @param intervalSeconds 間隔（秒）
+     * @return 停止用のハンドル（close で停止する）
+     */
+    public static Closeable startPeriodic(DigitalBank bank, WriteAheadLog log, Path path, long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint(bank, log, path);
+            } catch (IOException e) {
+                System.err.println("スナップショットの書き出しに失敗しました: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+
+        return () -> {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    /* ======================= 読み込み ======================= */
+
+    /**
+     * スナップショットをメモリマップで読み込み、空の bank に復元する。
+     * ファイルが存在しない場合は何もしない。
+     *
+     * @throws IOException ファイルが壊れている場合など
+     */
+    public static LoadResult load(Path path, DigitalBank bank) throws IOException {
+        long begin = System.nanoTime();
+        if (!Files.exists(path)) {
+            return new LoadResult(0, 0, 0, 0);
+        }
+
+        long accountCount = 0;
+        long transactionCount = 0;
+        int customerCount;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedInput in = new MappedInput(channel);
+            int version = in.getInt() == MAGIC ? in.getInt() : -1;
+            if (version != VERSION && version != VERSION_WITHOUT_ACCOUNT_ACCRUAL_DATE
+                    && version != VERSION_WITHOUT_ACCRUAL_DATE) {
+                throw new IOException("スナップショットの形式が正しくありません: " + path);
+            }
+            in.getLong();   // 作成日時
+            if (version != VERSION_WITHOUT_ACCRUAL_DATE) {
+                bank.restoreLastAccrualDay(in.getLong());
+            }
+            long bankAccrualDay = bank.lastAccrualDay();
+            customerCount = in.getInt();
+
+            byte[] idBytes = new byte[CUSTOMER_ID_LENGTH];
+            long[] ids = new long[0];
+            long[] amounts = new long[0];
+            long[] times = new long[0];
+            byte[] flags = new byte[0];
+            List<Customer> batch = new ArrayList<>(CUSTOMER_BATCH);
+
+            for (int c = 0; c < customerCount; c++) {
+                in.getBytes(idBytes, CUSTOMER_ID_LENGTH);
+                byte[] nameBytes = new byte[in.getShort() & 0xFFFF];
+                in.getBytes(nameBytes, nameBytes.length);
+                Customer customer = new Customer(new String(nameBytes, StandardCharsets.UTF_8),
+                        new String(idBytes, StandardCharsets.US_ASCII));
+
+                int accounts = in.getInt();
+                for (int a = 0; a < accounts; a++) {
+                    String accountNumber = TransactionJournal.accountNumber(in.getInt());
+                    AccountKind kind = AccountKind.ofCode(in.get());
+                    long balance = in.getLong();
+                    long lastAccrualDay = version == VERSION ? in.getLong() : bankAccrualDay;
+                    int count = in.getInt();
+                    Account account = kind.create(accountNumber, balance);
+                    if (account instanceof Accrual accrual) {
+                        accrual.setLastAccrualDay(lastAccrualDay);
+                    }
+
+                    if (count > ids.length) {
+                        int capacity = Math.max(count, ids.length * 2);
+                        ids = new long[capacity];
+                        amounts = new long[capacity];
+                        times = new long[capacity];
+                        flags = new byte[capacity];
+                    }
+                    in.getLongs(ids, count);
+                    in.getLongs(amounts, count);
+                    in.getLongs(times, count);
+                    in.getBytes(flags, count);
+
+                    if (count > 0) {
+                        if (!(account instanceof HistoryProvider provider)) {
+                            throw new IOException("取引履歴を持たない口座に取引が含まれています: " + accountNumber);
+                        }
+                        AccountHistory history = provider.getHistory();
+                        for (int i = 0; i < count; i++) {
+                            history.restore(accountNumber, ids[i], amounts[i], times[i],
+                                    (flags[i] & 1) != 0, TransactionType.ofCode(flags[i] >>> 1));
+                        }
+                    }
+                    customer.addAccount(account);
+                    accountCount++;
+                    transactionCount += count;
+                }
+
+                batch.add(customer);
+                if (batch.size() == CUSTOMER_BATCH) {
+                    bank.addCustomers(batch);
+                    batch.clear();
+                }
+            }
+            bank.addCustomers(batch);
+
+            if (in.getInt() != END_MAGIC) {
+                throw new IOException("スナップショットが途中で切れています: " + path);
+            }
+        }
+        return new LoadResult(customerCount, accountCount, transactionCount,
+                (System.nanoTime() - begin) / 1_000_000);
+    }
+
+    /**
+     * ファイルを一定範囲ずつメモリマップして読み進める入力。
+     */
+    private static final class MappedInput {
+        private final FileChannel channel;
+        private final long fileSize;
+        private long windowStart;
+        private MappedByteBuffer buffer;
+
+        MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            map(0);
+        }
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, fileSize - position));
+        }
+
+        /**
+         * 現在の範囲に bytes バイト以上残っていなければ、現在位置から範囲をマップし直す。
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                long position = windowStart + buffer.position();
+                if (fileSize - position < bytes) {
+                    throw new IOException("スナップショットが途中で切れています。");
+                }
+                map(position);
+            }
+        }
+
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        short getShort() throws IOException {
+            ensure(Short.BYTES);
+            return buffer.getShort();
+        }
+
+        byte get() throws IOException {
+            ensure(1);
+            return buffer.get();
+        }
+
+        void getBytes(byte[] target, int count) throws IOException {
+            int done = 0;
+            while (done < count) {
+                ensure(1);
+                int n = Math.min(count - done, buffer.remaining());
+                buffer.get(target, done, n);
+                done += n;
+            }
+        }
+
+        void getLongs(long[] target, int count) throws IOException {
+            int done = 0;
+            while (done < count) {
+                ensure(Long.BYTES);
+                int n = Math.min(count - done, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().get(target, done, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                done += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package asm03.models;
+
+import asm02.models.Account;
+import asm02.models.Customer;
+import asm02.models.Money;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * 顧客・口座の一括取込。
+ * 大きなファイルを1行ずつ読み進め、一定件数ごとのバッチに分けて次の順で処理する。
+ * <ol>
+ *   <li>読み込み（呼び出し元のスレッド）</li>
+ *   <li>解析と検証（複数スレッドで並列。User.setCustomerId / Account.setAccountNumber の検証を含む）</li>
+ *   <li>銀行への登録（ファイルの順番どおり、バッチ単位）</li>
+ * </ol>
+ * 処理中のバッチ数に上限を設けているため、ファイルの大きさに関係なく使用メモリは一定に収まる。
+ * 取り込めなかった行は「行番号,理由,元の行」の形式で報告する。
+ *
+ * <pre>
+ * CSV 形式:
+ *   C,個人番号,氏名
+ *   A,個人番号,口座番号,種類(SAVINGS / LOAN / PLAIN),残高
+ * 固定長形式:
+ *   C + 個人番号(12) + 氏名(残り)
+ *   A + 個人番号(12) + 口座番号(6) + 種類(S / L / P) + 残高(残り)
+ * </pre>
+ */
+public final class BulkImporter {
+
+    /**
+     * 入力ファイルの形式
+     */
+    public enum Format {
+        CSV,
+        FIXED_WIDTH
+    }
+
+    /**
+     * 取込結果
+     *
+     * @param lines     読み込んだ行数（空行を除く）
+     * @param customers 登録した顧客数
+     * @param accounts  登録した口座数
+     * @param rejected  取り込めなかった行数
+     * @param millis    処理時間（ミリ秒）
+     */
+    public record Result(long lines, long customers, long accounts, long rejected, long millis) {
+    }
+
+    // 氏名に使える文字（Asm02 の入力チェックと同じ：文字とスペースのみ）
+    private static final Pattern NAME_PATTERN = Pattern.compile("[\\p{L} ]+");
+
+    private static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    private final DigitalBank bank;
+    private final Format format;
+    private final int batchSize;
+    private final int parallelism;
+
+    /**
+     * @param bank        取込先の銀行
+     * @param format      入力ファイルの形式
+     * @param parallelism 解析・検証に使うスレッド数
+     */
+    public BulkImporter(DigitalBank bank, Format format, int parallelism) {
+        this(bank, format, parallelism, DEFAULT_BATCH_SIZE);
+    }
+
+    public BulkImporter(DigitalBank bank, Format format, int parallelism, int batchSize) {
+        this.bank = bank;
+        this.format = format;
+        this.parallelism = Math.max(1, parallelism);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /* ======================= 行の解析結果 ======================= */
+
+    /**
+     * 1行分の解析結果（顧客・口座・取込不可のいずれか）
+     */
+    private sealed interface Row permits CustomerRow, AccountRow, RejectedRow {
+    }
+
+    private record CustomerRow(long line, Customer customer) implements Row {
+    }
+
+    private record AccountRow(long line, String customerId, Account account) implements Row {
+    }
+
+    private record RejectedRow(long line, String reason, String text) implements Row {
+    }
+
+    /* ======================= パイプライン ======================= */
+
+    /**
+     * ファイルを取り込む。
+     *
+     * @param reader  入力（1行1件）
+     * @param rejects 取り込めなかった行の報告先（不要な場合は null）
+     */
+    public Result importFrom(BufferedReader reader, Writer rejects) throws IOException {
+        long begin = System.nanoTime();
+        long[] counts = new long[4];   // 0: 行数, 1: 顧客, 2: 口座, 3: 取込不可
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "bulk-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 解析中のバッチ（ファイルの順番）。上限を超えたら先頭のバッチを登録してから次を読む
+        Deque<Future<List<Row>>> inFlight = new ArrayDeque<>();
+        int maxInFlight = parallelism * 2;
+        try {
+            List<String> lines = new ArrayList<>(batchSize);
+            long firstLine = 1;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                lines.add(line);
+                if (lines.size() == batchSize) {
+                    inFlight.add(submit(workers, lines, firstLine));
+                    lines = new ArrayList<>(batchSize);
+                    firstLine = lineNumber + 1;
+                    if (inFlight.size() >= maxInFlight) {
+                        insert(await(inFlight.poll()), rejects, counts);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                inFlight.add(submit(workers, lines, firstLine));
+            }
+            while (!inFlight.isEmpty()) {
+                insert(await(inFlight.poll()), rejects, counts);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        if (rejects != null) {
+            rejects.flush();
+        }
+        return new Result(counts[0], counts[1], counts[2], counts[3], (System.nanoTime() - begin) / 1_000_000);
+    }
+
+    private Future<List<Row>> submit(ExecutorService workers, List<String> lines, long firstLine) {
+        return workers.submit(() -> {
+            List<Row> rows = new ArrayList<>(lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                String text = lines.get(i);
+                if (!text.isBlank()) {
+                    rows.add(parse(firstLine + i, text));
+                }
+            }
+            return rows;
+        });
+    }
+
+    private static List<Row> await(Future<List<Row>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("取込処理が中断されました。", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            throw new IOException("取込処理に失敗しました。", e.getCause());
+        }
+    }
+
+    /**
+     * 解析済みのバッチを銀行に登録する（ファイルの順番どおりに呼び出される）。
+     * バッチ内の新しい顧客には口座を登録前に追加しておき、バッチの最後に1回の addCustomers でまとめて登録する。
+     * 登録済みの顧客への口座の追加だけは1件ずつ行う。
+     */
+    private void insert(List<Row> rows, Writer rejects, long[] counts) throws IOException {
+        // 登録待ちの顧客（個人番号 → 行）。ファイルの順番を保つ
+        Map<String, CustomerRow> pending = new LinkedHashMap<>();
+        // このバッチで使用する口座番号（登録待ちの顧客の口座どうしの重複を検出する）
+        Set<String> accountNumbers = new HashSet<>();
+        for (Row row : rows) {
+            counts[0]++;
+            if (row instanceof CustomerRow customerRow) {
+                String id = customerRow.customer().getCustomerId();
+                if (bank.findCustomerById(id) != null || pending.putIfAbsent(id, customerRow) != null) {
+                    reject(rejects, counts, customerRow.line(), "個人番号がすでに登録されています", id);
+                }
+            } else if (row instanceof AccountRow accountRow) {
+                String accountNumber = accountRow.account().getAccountNumber();
+                CustomerRow pendingOwner = pending.get(accountRow.customerId());
+                Customer owner = pendingOwner != null
+                        ? pendingOwner.customer()
+                        : bank.findCustomerById(accountRow.customerId());
+                if (owner == null) {
+                    reject(rejects, counts, accountRow.line(), "顧客が登録されていません", accountRow.customerId());
+                } else if (bank.findAccountByNumber(accountNumber) != null || !accountNumbers.add(accountNumber)
+                        || !owner.addAccount(accountRow.account())) {
+                    reject(rejects, counts, accountRow.line(), "口座番号がすでに使用されています", accountNumber);
+                } else if (pendingOwner == null) {
+                    counts[2]++;   // 登録済みの顧客に追加した口座（登録待ちの顧客の口座は登録後に数える）
+                }
+            } else if (row instanceof RejectedRow rejected) {
+                reject(rejects, counts, rejected.line(), rejected.reason(), rejected.text());
+            }
+        }
+        if (pending.isEmpty()) return;
+
+        List<Customer> batch = new ArrayList<>(pending.size());
+        for (CustomerRow customerRow : pending.values()) {
+            batch.add(customerRow.customer());
+        }
+        counts[1] += bank.addCustomers(batch);
+        for (CustomerRow customerRow : pending.values()) {
+            Customer customer = customerRow.customer();
+            if (customer.getBank() == bank) {
+                counts[2] += customer.getAccounts().size();
+            } else {
+                // 取込と並行して別の経路から同じ個人番号・口座番号が登録された場合
+                reject(rejects, counts, customerRow.line(), "個人番号または口座番号がすでに登録されています",
+                        customer.getCustomerId());
+            }
+        }
+    }
+
+    private static void reject(Writer rejects, long[] counts, long line, String reason, String text) throws IOException {
+        counts[3]++;
+        if (rejects != null) {
+            rejects.write(line + "," + reason + "," + text + System.lineSeparator());
+        }
+    }
+
+    /* ======================= 解析・検証 ======================= */
+
+    /**
+     * 1行を解析・検証する（ワーカースレッドで実行される）。
+     */
+    private Row parse(long line, String text) {
+        try {
+            String[] fields = format == Format.CSV ? splitCsv(text) : splitFixedWidth(text);
+            switch (fields[0]) {
+                case "C" -> {
+                    require(fields, 3);
+                    String name = fields[2].trim();
+                    if (!NAME_PATTERN.matcher(name).matches()) {
+                        throw new IllegalArgumentException("氏名は文字とスペースのみ使用可能です。");
+                    }
+                    return new CustomerRow(line, new Customer(name, fields[1].trim()));
+                }
+                case "A" -> {
+                    require(fields, 5);
+                    String customerId = fields[1].trim();
+                    AccountKind kind = parseKind(fields[3].trim());
+                    long balance = Money.parse(fields[4]);
+                    if (balance < 0) {
+                        throw new IllegalArgumentException("残高はマイナスにできません。");
+                    }
+                    return new AccountRow(line, customerId, kind.create(fields[2].trim(), balance));
+                }
+                default -> throw new IllegalArgumentException("不明な行種別です: " + fields[0]);
+            }
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            // NumberFormatException も IllegalArgumentException に含まれる
+            return new RejectedRow(line, e.getMessage(), text);
+        }
+    }
+
+    private static void require(String[] fields, int count) {
+        if (fields.length < count) {
+            throw new IllegalArgumentException("項目数が足りません（" + count + " 項目必要）。");
+        }
+    }
+
+    private static AccountKind parseKind(String value) {
+        return switch (value.toUpperCase(Locale.ROOT)) {
+            case "S", "SAVINGS" -> AccountKind.SAVINGS;
+            case "L", "LOAN" -> AccountKind.LOAN;
+            case "P", "PLAIN" -> AccountKind.PLAIN;
+            default -> throw new IllegalArgumentException("不明な口座種類です: " + value);
+        };
+    }
+
+    /**
+     * CSV の1行を項目に分ける（引用符は使わない前提。残高の桁区切りは使用不可）。
+     */
+    private static String[] splitCsv(String text) {
+        return text.split(",", -1);
+    }
+
+    private static String[] splitFixedWidth(String text) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("空の行です。");
+        }
+        String type = text.substring(0, 1);
+        if (type.equals("C")) {
+            if (text.length() < 14) throw new IllegalArgumentException("行の長さが足りません。");
+            return new String[]{type, text.substring(1, 13), text.substring(13)};
+        }
+        if (type.equals("A")) {
+            if (text.length() < 21) throw new IllegalArgumentException("行の長さが足りません。");
+            return new String[]{type, text.substring(1, 13), text.substring(13, 19), text.substring(19, 20),
+                    text.substring(20)};
+        }
+        return new String[]{type};
+    }
+}
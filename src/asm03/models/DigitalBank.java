@@ -1,10 +1,16 @@
 package asm03.models;
 
+import asm02.models.AccountEntry;
 import asm02.models.Bank;
 import asm02.models.Customer;
 import asm02.models.Account;
+import asm02.models.Money;
 
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * デジタルバンククラス
@@ -13,6 +19,110 @@ import java.util.List;
  */
 public class DigitalBank extends Bank {
 
+    // 変更ログ（永続化しない場合は null）
+    private volatile WriteAheadLog log;
+
+    // 最後に利息を計上した営業日（エポック日。未計上の場合は Long.MIN_VALUE）
+    private long lastAccrualDay = Long.MIN_VALUE;
+
+    // 口座番号の割り当て状況（登録済みの口座番号はすべて使用中）
+    private final AccountNumberAllocator accountNumbers = new AccountNumberAllocator();
+
+    // 出金要求の重複排除の既定値：保持期間 10 分、最大 20 万件（1件あたり約 200 バイト）
+    private static final long DEFAULT_DEDUP_TTL_MILLIS = 10 * 60 * 1_000;
+    private static final int DEFAULT_DEDUP_MAX_ENTRIES = 200_000;
+
+    // 要求ID付きの出金の処理結果（再送時に同じ結果を返すため）
+    private final WithdrawDedupCache withdrawDedup;
+
+    public DigitalBank() {
+        this(DEFAULT_DEDUP_TTL_MILLIS, DEFAULT_DEDUP_MAX_ENTRIES);
+    }
+
+    /**
+     * @param dedupTtlMillis  要求ID付きの出金結果を保持する期間（ミリ秒）
+     * @param dedupMaxEntries 保持する要求IDの最大数
+     */
+    public DigitalBank(long dedupTtlMillis, int dedupMaxEntries) {
+        this.withdrawDedup = new WithdrawDedupCache(dedupTtlMillis, dedupMaxEntries);
+    }
+
+    /**
+     * 変更ログを設定する。WriteAheadLog.open / close から呼び出される。
+     */
+    void attachLog(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    /**
+     * 最後に利息を計上した営業日を返す（未計上の場合は null）。
+     */
+    public synchronized LocalDate getLastAccrualDate() {
+        return lastAccrualDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(lastAccrualDay);
+    }
+
+    /**
+     * 営業日の利息計上を開始済みとして記録する（{@link EndOfDayAccrual} から呼び出される）。
+     * 最後に開始した日より前の日付の場合は false を返す。同じ日付の場合は、途中で止まった計上の再開として true を返す
+     * （計上済みかどうかは口座ごとに {@link Accrual#getLastAccrualDay()} で判定する）。
+     * 記録は変更ログにその日の利息の取引より先に書かれるため、変更ログの再生時に利息の取引の営業日が分かる。
+     */
+    synchronized boolean markAccrualStarted(LocalDate date) {
+        long day = date.toEpochDay();
+        if (day < lastAccrualDay) {
+            return false;
+        }
+        if (day == lastAccrualDay) {
+            return true;
+        }
+        lastAccrualDay = day;
+        WriteAheadLog current = log;
+        if (current != null) {
+            current.onAccrualStarted(day);
+        }
+        return true;
+    }
+
+    /**
+     * 永続化された最終利息計上日を復元する（スナップショット・変更ログの読み込み時）。
+     *
+     * @param day エポック日（Long.MIN_VALUE は未計上）
+     */
+    synchronized void restoreLastAccrualDay(long day) {
+        lastAccrualDay = Math.max(lastAccrualDay, day);
+    }
+
+    /**
+     * 最終利息計上日（エポック日。未計上の場合は Long.MIN_VALUE）。スナップショットの書き出し用。
+     */
+    synchronized long lastAccrualDay() {
+        return lastAccrualDay;
+    }
+
+    /**
+     * 変更ログが設定されている場合、現在のスレッドの変更が fsync されるまで待つ。
+     */
+    void awaitDurable() {
+        WriteAheadLog current = log;
+        if (current != null) {
+            current.awaitDurable();
+        }
+    }
+
+    /**
+     * 反映済みの取引が fsync されるまで待つ（応答を返す経路用）。
+     *
+     * @param result 反映済みの処理結果
+     * @throws NotDurableException 変更ログの書き込みに失敗した場合（取引は反映されたまま）
+     */
+    private void awaitDurable(Enum<?> result) {
+        try {
+            awaitDurable();
+        } catch (UncheckedIOException e) {
+            throw new NotDurableException(result, e.getCause());
+        }
+    }
+
     /**
      * マイナンバー番号から顧客情報を取得する。
      * 内部的には Bank クラスの findCustomerById(...) を利用します。
@@ -21,58 +131,415 @@ public class DigitalBank extends Bank {
      * @return 対応する {@link Customer} が存在すればそのインスタンス、存在しなければ null
      */
     public Customer getCustomerById(String customerId) {
-        return findCustomerById(customerId);
+        long start = System.nanoTime();
+        Customer customer = findCustomerById(customerId);
+        BankMetrics.global().customerLookupLatency().recordSince(start);
+        return customer;
     }
 
     /**
      * 口座番号がシステム内に存在するかどうかを確認する。
+     * 銀行全体の口座索引を利用するため O(1) で判定できる。
      *
      * @param accountNumber 存在チェックを行いたい口座番号
      * @return 少なくとも 1 つの口座がこの番号を持っていれば true、そうでなければ false
      */
     public boolean isAccountExisted(String accountNumber) {
-        List<Customer> customers = getCustomers();
-        if (customers == null || customers.isEmpty()) {
+        return findAccountByNumber(accountNumber) != null;
+    }
+
+    /**
+     * 空いている口座番号を1つ割り当てる。
+     * 割り当てた番号は口座を登録するまで他の呼び出しに割り当てられない。
+     * 口座を登録しなかった場合は {@link #releaseAccountNumber(String)} で空きに戻すこと。
+     *
+     * @return 6桁の口座番号
+     * @throws IllegalStateException 空き番号がない場合
+     */
+    public String allocateAccountNumber() {
+        return accountNumbers.allocateNumber();
+    }
+
+    /**
+     * 割り当てたが使わなかった口座番号を空きに戻す。
+     * すでに口座が登録されている番号は戻さない。
+     *
+     * @return 空きに戻した場合は true
+     */
+    public boolean releaseAccountNumber(String accountNumber) {
+        int number = AccountNumberAllocator.parse(accountNumber);
+        if (number < 0 || isAccountExisted(accountNumber)) {
             return false;
         }
+        return accountNumbers.release(number);
+    }
 
-        for (Customer customer : customers) {
-            // Customer クラス側の補助メソッドを利用して検索
-            if (customer.findAccountByNumber(accountNumber) != null) {
-                return true;
-            }
+    /**
+     * 口座番号の割り当て状況（使用率の確認など）
+     */
+    public AccountNumberAllocator getAccountNumberAllocator() {
+        return accountNumbers;
+    }
+
+    /**
+     * 登録された口座の番号を使用中にする（手入力された番号や、復元・一括取込された口座を含む）。
+     */
+    @Override
+    protected void onAccountRegistered(Account account) {
+        int number = AccountNumberAllocator.parse(account.getAccountNumber());
+        if (number >= 0) {
+            accountNumbers.reserve(number);
+        }
+    }
+
+    /**
+     * 口座の取引履歴をページ単位で検索する。
+     *
+     * @param customerId    個人番号（口座の保有者であること）
+     * @param accountNumber 口座番号
+     * @param query         検索条件（期間・取引結果・1ページの件数）
+     * @param cursor        前のページの {@link HistoryPage#nextCursor()}（先頭ページは {@link HistoryPage#FIRST}）
+     * @return 検索結果のページ。口座が見つからない、保有者が異なる、履歴を持たない口座の場合は null
+     */
+    public HistoryPage queryHistory(String customerId, String accountNumber, HistoryQuery query, long cursor) {
+        AccountEntry entry = findAccountByNumber(accountNumber);
+        if (entry == null || !entry.owner().getCustomerId().equals(customerId)
+                || !(entry.account() instanceof HistoryProvider provider)) {
+            return null;
         }
-        return false;
+        return provider.getHistory().query(accountNumber, query, cursor);
     }
 
     /**
      * 出金処理を行うメソッド。
      * <ul>
-     *   <li>個人番号 から顧客を特定する</li>
-     *   <li>口座番号から対象口座を取得する</li>
+     *   <li>口座番号から対象口座と保有顧客を取得する</li>
+     *   <li>保有顧客の個人番号が指定されたものと一致するか確認する</li>
      *   <li>その口座が Withdraw インターフェースに対応していれば、出金処理を実行する</li>
      * </ul>
      *
      * @param customerId    個人番号（12桁の数字を想定）
      * @param accountNumber 出金したい口座番号
-     * @param amount        出金額
+     * @param amount        出金額（最小単位、{@link Money} 参照）
      * @return 出金に成功した場合は true、失敗した場合は false
+     * @throws NotDurableException 出金は反映されたが変更ログの書き込みに失敗した場合
      */
-    public boolean withdraw(String customerId, String accountNumber, double amount) {
-        Customer customer = getCustomerById(customerId);
-        if (customer == null) {
+    public boolean withdraw(String customerId, String accountNumber, long amount) {
+        AccountEntry entry = lookupAccount(accountNumber);
+        if (entry == null || !entry.owner().getCustomerId().equals(customerId)) {
             return false;
         }
+        return withdraw(entry.account(), amount);
+    }
 
-        Account account = customer.findAccountByNumber(accountNumber);
-        if (account == null) {
+    /**
+     * 口座番号だけを指定して出金処理を行う。
+     * 個人番号による本人確認が済んでいる経路（ATM 網など）から利用する。
+     *
+     * @param accountNumber 出金したい口座番号
+     * @param amount        出金額（最小単位、{@link Money} 参照）
+     * @return 出金に成功した場合は true、失敗した場合は false
+     * @throws NotDurableException 出金は反映されたが変更ログの書き込みに失敗した場合
+     */
+    public boolean withdraw(String accountNumber, long amount) {
+        AccountEntry entry = lookupAccount(accountNumber);
+        if (entry == null) {
             return false;
         }
+        return withdraw(entry.account(), amount);
+    }
+
+    /**
+     * 出金要求を1件処理し、詳しい結果を返す（ネットワーク経由の要求向け）。
+     * 紙のレシートは出力しない（結果は応答として呼び出し元に返す）。
+     *
+     * @param request 出金要求
+     * @return 処理結果
+     * @throws NotDurableException 出金は反映されたが変更ログの書き込みに失敗した場合
+     */
+    public WithdrawResult withdraw(WithdrawRequest request) {
+        WithdrawResult result = applyWithdraw(request);
+        awaitDurable(result);   // 取引が変更ログに書き込まれてから応答する
+        return result;
+    }
+
+    /**
+     * 出金要求を1件処理する（変更ログの fsync は待たない）。
+     * 例外を投げるのは口座を更新する前に失敗した場合に限る。
+     */
+    private WithdrawResult applyWithdraw(WithdrawRequest request) {
+        AccountEntry entry = lookupAccount(request.accountNumber());
+        if (entry == null) {
+            return WithdrawResult.ACCOUNT_NOT_FOUND;
+        }
+        if (!entry.owner().getCustomerId().equals(request.customerId())) {
+            return WithdrawResult.CUSTOMER_MISMATCH;
+        }
+        if (!(entry.account() instanceof Withdraw)) {
+            return WithdrawResult.NOT_WITHDRAWABLE;
+        }
+        return applyWithdraw(entry.account(), request.amount(), false)
+                ? WithdrawResult.SUCCESS
+                : WithdrawResult.REJECTED;
+    }
 
+    /**
+     * 要求ID付きで出金要求を処理する（再送されても二重に出金しない）。
+     * 同じ要求IDの要求がすでに処理済み（または処理中）の場合は、口座に触れずに最初の結果を返す。
+     * 再送に結果を返すのは最初の要求の fsync 待ちが終わってから。fsync 待ちで失敗した要求の再送には同じ
+     * {@link NotDurableException} を投げ、二重に出金しない。
+     *
+     * @param requestId 要求ID（ATM 網などの呼び出し元が要求ごとに発行する）
+     * @param request   出金要求
+     * @return 処理結果（再送の場合は最初の処理結果）
+     * @throws NotDurableException 出金は反映されたが変更ログの書き込みに失敗した場合
+     */
+    public WithdrawResult withdraw(String requestId, WithdrawRequest request) {
+        return withdrawDedup.execute(requestId, () -> applyWithdraw(request), this::awaitDurable);
+    }
+
+    /**
+     * 出金要求の重複排除キャッシュ（保持件数・再送件数の確認用）
+     */
+    public WithdrawDedupCache getWithdrawDedupCache() {
+        return withdrawDedup;
+    }
+
+    private boolean withdraw(Account account, long amount) {
+        return withdraw(account, amount, true);
+    }
+
+    private boolean withdraw(Account account, long amount, boolean printReceipt) {
+        boolean success = applyWithdraw(account, amount, printReceipt);
+        awaitDurable(success ? WithdrawResult.SUCCESS : WithdrawResult.REJECTED);   // 変更ログに書き込まれてから応答する
+        return success;
+    }
+
+    /**
+     * 口座から出金する（変更ログの fsync は待たない）。処理時間と結果を記録する。
+     */
+    private boolean applyWithdraw(Account account, long amount, boolean printReceipt) {
+        long start = System.nanoTime();
+        boolean premium = account.isPremium();
+        boolean success = false;
         // Withdraw インターフェースを実装している口座のみ出金可能
         if (account instanceof Withdraw withdrawableAccount) {
-            return withdrawableAccount.withdraw(amount);
+            success = printReceipt
+                    ? withdrawableAccount.withdraw(amount)
+                    : withdrawableAccount.withdrawWithoutReceipt(amount);
+        }
+        BankMetrics metrics = BankMetrics.global();
+        metrics.withdrawLatency().recordSince(start);
+        metrics.recordOutcome(account, premium, success);
+        return success;
+    }
+
+    /**
+     * 口座振替を行う（振替元の口座から振替先の口座へ資金を移す）。
+     * <ul>
+     *   <li>振替元の口座は指定した個人番号の顧客が保有していなければならない（振替先は他の顧客の口座でもよい）</li>
+     *   <li>2つの口座のロックは常に口座キーの小さい順に取得するため、A→B と B→A の振替が同時に走ってもデッドロックしない</li>
+     *   <li>両方の口座のロックを持ったまま判定と更新を行うため、振替の途中の状態（片方だけ更新された状態）は外から見えない</li>
+     *   <li>成功時は両方の口座に取引履歴を記録し、失敗時は振替元に失敗の取引履歴だけを記録する</li>
+     * </ul>
+     * 普通預金口座は引き落とし・入金、ローン口座は借入（手数料なし）・返済として扱う。
+     *
+     * @param customerId        振替元の口座を保有する顧客の個人番号
+     * @param fromAccountNumber 振替元の口座番号
+     * @param toAccountNumber   振替先の口座番号
+     * @param amount            振替額（最小単位、{@link Money} 参照）
+     * @return 処理結果
+     * @throws NotDurableException 振替は反映されたが変更ログの書き込みに失敗した場合
+     */
+    public TransferResult transfer(String customerId, String fromAccountNumber, String toAccountNumber, long amount) {
+        AccountEntry from = lookupAccount(fromAccountNumber);
+        AccountEntry to = lookupAccount(toAccountNumber);
+        if (from == null || to == null) {
+            return TransferResult.ACCOUNT_NOT_FOUND;
+        }
+        if (!from.owner().getCustomerId().equals(customerId)) {
+            return TransferResult.CUSTOMER_MISMATCH;
+        }
+        if (from.account() == to.account()) {
+            return TransferResult.SAME_ACCOUNT;
+        }
+        if (!(from.account() instanceof Transfer source) || !(to.account() instanceof Transfer target)) {
+            return TransferResult.NOT_TRANSFERABLE;
+        }
+
+        long start = System.nanoTime();
+        boolean success = transfer(from.account(), source, to.account(), target, amount);
+        TransferResult result = success ? TransferResult.SUCCESS : TransferResult.REJECTED;
+        awaitDurable(result);   // 取引が変更ログに書き込まれてから応答する
+        BankMetrics.global().transferLatency().recordSince(start);
+        return result;
+    }
+
+    /**
+     * 2つの口座のロックを口座キーの順に取得して振替を行う。
+     */
+    private static boolean transfer(Account fromAccount, Transfer source, Account toAccount, Transfer target,
+                                     long amount) {
+        boolean fromFirst = TransactionJournal.accountKey(fromAccount.getAccountNumber())
+                < TransactionJournal.accountKey(toAccount.getAccountNumber());
+        ReentrantLock first = (fromFirst ? fromAccount : toAccount).getLock();
+        ReentrantLock second = (fromFirst ? toAccount : fromAccount).getLock();
+        first.lock();
+        try {
+            second.lock();
+            try {
+                if (source.canTransferOut(amount) && target.canTransferIn(amount)) {
+                    source.transferOut(amount);
+                    target.transferIn(amount);
+                    return true;
+                }
+                source.getHistory().record(fromAccount.getAccountNumber(), amount, false,
+                        TransactionType.TRANSFER_OUT, 0);
+                return false;
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    /**
+     * 口座番号から口座と保有顧客を検索し、検索時間を記録する。
+     */
+    private AccountEntry lookupAccount(String accountNumber) {
+        long start = System.nanoTime();
+        AccountEntry entry = findAccountByNumber(accountNumber);
+        BankMetrics.global().accountLookupLatency().recordSince(start);
+        return entry;
+    }
+
+    /**
+     * 複数の出金要求をまとめて処理する（ATM 網からの一括要求向け）。
+     * <ul>
+     *   <li>要求を口座ごとにまとめ、口座と保有顧客の検索は口座ごとに 1 回だけ行う</li>
+     *   <li>同じ口座への要求は、口座のロックを 1 回取得したまま要求順に処理する</li>
+     *   <li>レシートは 1 件ずつではなく、一括処理の集計レシートを 1 枚だけ出力する</li>
+     *   <li>結果は要求と同じ並びの配列で返す</li>
+     * </ul>
+     *
+     * @param requests 出金要求の一覧
+     * @return 要求ごとの処理結果（requests と同じ順番）
+     * @throws NotDurableException 出金は反映されたが変更ログの書き込みに失敗した場合（要求ごとの結果を持つ）
+     */
+    public WithdrawResult[] withdrawBatch(List<WithdrawRequest> requests) {
+        int n = requests.size();
+        WithdrawResult[] results = new WithdrawResult[n];
+
+        // 上位 32bit に口座キー、下位 32bit に要求の位置を詰めて並べ替える
+        // （同じ口座の要求は要求順に並ぶ）。口座番号の形式が不正な要求はここで除外する。
+        long[] order = new long[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            String accountNumber = requests.get(i).accountNumber();
+            if (isAccountNumberFormat(accountNumber)) {
+                order[count++] = ((long) TransactionJournal.accountKey(accountNumber) << 32) | i;
+            } else {
+                results[i] = WithdrawResult.ACCOUNT_NOT_FOUND;
+            }
+        }
+        Arrays.sort(order, 0, count);
+
+        int groupStart = 0;
+        while (groupStart < count) {
+            int key = (int) (order[groupStart] >>> 32);
+            int groupEnd = groupStart + 1;
+            while (groupEnd < count && (int) (order[groupEnd] >>> 32) == key) {
+                groupEnd++;
+            }
+            withdrawGroup(requests, order, groupStart, groupEnd, results);
+            groupStart = groupEnd;
+        }
+
+        try {
+            awaitDurable();   // 一括処理の取引をまとめて fsync する
+        } catch (UncheckedIOException e) {
+            logBatch(requests, results);   // 出金は反映済みのため、集計レシートは出力する
+            throw new NotDurableException(results, e.getCause());
+        }
+        logBatch(requests, results);
+        return results;
+    }
+
+    /**
+     * 一括出金の集計レシートを出力する。
+     */
+    private static void logBatch(List<WithdrawRequest> requests, WithdrawResult[] results) {
+        int succeeded = 0;
+        long totalAmount = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i].isSuccess()) {
+                succeeded++;
+                totalAmount += requests.get(i).amount();
+            }
+        }
+        int total = results.length;
+        int accepted = succeeded;
+        long withdrawn = totalAmount;
+        ReceiptSink.shared().submit(out -> {
+            out.format("+-----------------------------+%n");
+            out.format("|     一括出金 集計レシート     |%n");
+            out.format("+-----------------------------+%n");
+            out.format("| 要求件数   : %,d%n", total);
+            out.format("| 成功件数   : %,d%n", accepted);
+            out.format("| 失敗件数   : %,d%n", total - accepted);
+            out.format("| 出金総額   : %s%n", Money.formatUnits(withdrawn));
+            out.format("+-----------------------------+%n");
+        });
+    }
+
+    /**
+     * 同じ口座に対する要求（order[from..to)）をまとめて処理する。
+     */
+    private void withdrawGroup(List<WithdrawRequest> requests, long[] order, int from, int to,
+                               WithdrawResult[] results) {
+        WithdrawRequest first = requests.get((int) order[from]);
+        AccountEntry entry = findAccountByNumber(first.accountNumber());
+        if (entry == null || !(entry.account() instanceof Withdraw withdrawableAccount)) {
+            WithdrawResult result = entry == null ? WithdrawResult.ACCOUNT_NOT_FOUND : WithdrawResult.NOT_WITHDRAWABLE;
+            for (int i = from; i < to; i++) {
+                results[(int) order[i]] = result;
+            }
+            return;
+        }
+
+        String ownerId = entry.owner().getCustomerId();
+        Account account = entry.account();
+        BankMetrics metrics = BankMetrics.global();
+        ReentrantLock lock = account.getLock();
+        lock.lock();
+        try {
+            for (int i = from; i < to; i++) {
+                int index = (int) order[i];
+                WithdrawRequest request = requests.get(index);
+                if (!ownerId.equals(request.customerId())) {
+                    results[index] = WithdrawResult.CUSTOMER_MISMATCH;
+                } else {
+                    boolean premium = account.isPremium();
+                    boolean success = withdrawableAccount.withdrawWithoutReceipt(request.amount());
+                    metrics.recordOutcome(account, premium, success);
+                    results[index] = success ? WithdrawResult.SUCCESS : WithdrawResult.REJECTED;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 口座番号が 6 桁の数字かどうか（正規表現を使わずに判定する）。
+     */
+    private static boolean isAccountNumberFormat(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() != 6) return false;
+        for (int i = 0; i < 6; i++) {
+            char c = accountNumber.charAt(i);
+            if (c < '0' || c > '9') return false;
         }
-        return false;
+        return true;
     }
 }
@@ -0,0 +1,166 @@
+package asm03.models;
+
+import asm02.models.Account;
+import asm02.models.Customer;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 日次（営業日終了時）の利息計上処理。
+ * 全口座に1日分の利息を計上する（普通預金は受取利息、ローンは支払利息。{@link Accrual} 参照）。
+ * <ul>
+ *   <li>口座の一覧を固定長のチャンクに分け、ワーカースレッドで並列に処理する</li>
+ *   <li>ロックは1口座ずつ、計上の判定と残高の更新の間だけ取得する（出金・振替は処理中も止まらない）</li>
+ *   <li>各ワーカーはチャンクの処理後に変更ログの fsync をまとめて待つ</li>
+ * </ul>
+ * 計上は取引種類 {@link TransactionType#INTEREST} として記録され、変更ログからも残高の増減として復元される。
+ * 計上した営業日は口座ごとに記録し（スナップショットと変更ログの利息の取引から復元される）、計上済みの口座は読み飛ばす。
+ * 途中で停止した営業日は同じ日付で再実行すれば残りの口座だけを計上する。最後に計上した日より前の日付の実行は拒否する。
+ */
+public final class EndOfDayAccrual {
+
+    private static final int DEFAULT_CHUNK_SIZE = 4_096;
+
+    /**
+     * 処理結果
+     *
+     * @param accounts        対象にした口座数
+     * @param alreadyAccrued  その営業日の利息を計上済みで読み飛ばした口座数
+     * @param savingsAccrued  利息を計上した普通預金口座の数
+     * @param savingsInterest 普通預金口座の受取利息の合計（最小単位）
+     * @param loansAccrued    利息を計上したローン口座の数
+     * @param loanInterest    ローン口座の支払利息の合計（最小単位）
+     * @param millis          処理時間（ミリ秒）
+     */
+    public record Result(long accounts, long alreadyAccrued, long savingsAccrued, long savingsInterest,
+                         long loansAccrued, long loanInterest, long millis) {
+    }
+
+    private final DigitalBank bank;
+    private final int parallelism;
+    private final int chunkSize;
+
+    public EndOfDayAccrual(DigitalBank bank) {
+        this(bank, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param bank        対象の銀行
+     * @param parallelism ワーカースレッド数
+     * @param chunkSize   1回のタスクで処理する口座数
+     */
+    public EndOfDayAccrual(DigitalBank bank, int parallelism, int chunkSize) {
+        if (parallelism <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("スレッド数とチャンクの大きさは1以上でなければなりません。");
+        }
+        this.bank = bank;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 今日の日付を営業日として利息を計上する。
+     *
+     * @see #run(LocalDate)
+     */
+    public Result run() throws InterruptedException {
+        return run(LocalDate.now());
+    }
+
+    /**
+     * 呼び出し時点で登録されている全口座に1日分の利息を計上する。
+     * 処理中に追加された口座は対象にしない。その営業日の利息を計上済みの口座は読み飛ばす。
+     *
+     * @param businessDate 営業日
+     * @throws IllegalStateException 最後に利息を計上した日より前の営業日を指定した場合
+     */
+    public Result run(LocalDate businessDate) throws InterruptedException {
+        if (!bank.markAccrualStarted(businessDate)) {
+            throw new IllegalStateException(businessDate + " は最後に利息を計上した日より前です（最終計上日: "
+                    + bank.getLastAccrualDate() + "）。");
+        }
+        long begin = System.nanoTime();
+        Account[] accounts = collectAccounts();
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "end-of-day-accrual");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long day = businessDate.toEpochDay();
+        long[] totals = new long[5];   // 0: 預金口座数, 1: 受取利息, 2: ローン口座数, 3: 支払利息, 4: 計上済み
+        try {
+            List<Callable<long[]>> tasks = new ArrayList<>();
+            for (int from = 0; from < accounts.length; from += chunkSize) {
+                int start = from;
+                int end = Math.min(accounts.length, from + chunkSize);
+                tasks.add(() -> accrue(accounts, start, end, day));
+            }
+            for (Future<long[]> future : workers.invokeAll(tasks)) {
+                long[] partial = future.get();
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] += partial[i];
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("利息計上に失敗しました。", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        return new Result(accounts.length, totals[4], totals[0], totals[1], totals[2], totals[3],
+                (System.nanoTime() - begin) / 1_000_000);
+    }
+
+    /**
+     * 利息計上の対象になる口座の一覧（顧客の登録順）
+     */
+    private Account[] collectAccounts() {
+        List<Account> accounts = new ArrayList<>();
+        for (Customer customer : bank.copyCustomers()) {
+            for (Account account : customer.copyAccounts()) {
+                if (account instanceof Accrual) {
+                    accounts.add(account);
+                }
+            }
+        }
+        return accounts.toArray(new Account[0]);
+    }
+
+    /**
+     * accounts[from..to) に営業日 day（エポック日）の利息を計上する（ワーカースレッドで実行される）。
+     */
+    private long[] accrue(Account[] accounts, int from, int to, long day) {
+        long[] totals = new long[5];
+        for (int i = from; i < to; i++) {
+            Account account = accounts[i];
+            Accrual accrual = (Accrual) account;
+            AccountHistory history = accrual.getHistory();
+            account.getLock().lock();
+            try {
+                if (accrual.getLastAccrualDay() >= day) {
+                    totals[4]++;
+                    continue;
+                }
+                accrual.setLastAccrualDay(day);
+                long amount = accrual.dailyAccrual();
+                if (amount <= 0) continue;
+                account.setBalance(account.getBalance() + amount);
+                history.record(account.getAccountNumber(), amount, true, TransactionType.INTEREST, amount);
+                int kind = account.isLiability() ? 2 : 0;
+                totals[kind]++;
+                totals[kind + 1] += amount;
+            } finally {
+                account.getLock().unlock();
+            }
+        }
+        bank.awaitDurable();   // このチャンクの取引をまとめて fsync する
+        return totals;
+    }
+}
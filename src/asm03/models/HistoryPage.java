@@ -0,0 +1,22 @@
+package asm03.models;
+
+import java.util.List;
+
+/**
+ * 取引履歴の検索結果の1ページ。
+ *
+ * @param transactions このページの取引（古い順）
+ * @param nextCursor   次のページを取得するためのカーソル（次のページがない場合は {@link #END}）
+ */
+public record HistoryPage(List<Transaction> transactions, long nextCursor) {
+
+    /** 先頭ページを取得するためのカーソル */
+    public static final long FIRST = 0;
+
+    /** 次のページがないことを表すカーソル */
+    public static final long END = -1;
+
+    public boolean hasNext() {
+        return nextCursor != END;
+    }
+}
@@ -0,0 +1,12 @@
+package asm03.models;
+
+/**
+ * 取引履歴（{@link AccountHistory}）を持つ口座。
+ */
+public interface HistoryProvider {
+
+    /**
+     * この口座の取引履歴を返す。
+     */
+    AccountHistory getHistory();
+}
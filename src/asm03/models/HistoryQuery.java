@@ -0,0 +1,48 @@
+package asm03.models;
+
+/**
+ * 取引履歴の検索条件。
+ *
+ * @param fromTime 対象期間の開始日時（エポックミリ秒、この日時を含む）
+ * @param toTime   対象期間の終了日時（エポックミリ秒、この日時を含まない）
+ * @param status   取引結果による絞り込み
+ * @param pageSize 1ページの最大件数
+ */
+public record HistoryQuery(long fromTime, long toTime, StatusFilter status, int pageSize) {
+
+    /**
+     * 取引結果による絞り込み
+     */
+    public enum StatusFilter {
+        ALL,
+        SUCCESS,
+        FAILURE;
+
+        boolean accepts(boolean success) {
+            return switch (this) {
+                case ALL -> true;
+                case SUCCESS -> success;
+                case FAILURE -> !success;
+            };
+        }
+    }
+
+    public HistoryQuery {
+        if (status == null) {
+            throw new IllegalArgumentException("取引結果の条件を指定してください。");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("1ページの件数は1以上でなければなりません。");
+        }
+        if (fromTime > toTime) {
+            throw new IllegalArgumentException("期間の開始日時は終了日時以前でなければなりません。");
+        }
+    }
+
+    /**
+     * 全期間・全取引を対象とする検索条件
+     */
+    public static HistoryQuery all(int pageSize) {
+        return new HistoryQuery(Long.MIN_VALUE, Long.MAX_VALUE, StatusFilter.ALL, pageSize);
+    }
+}
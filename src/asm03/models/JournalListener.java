@@ -0,0 +1,34 @@
+package asm03.models;
+
+/**
+ * 取引の記録を受け取るリスナー。
+ * {@link AccountHistory} が取引を記録した直後に、その履歴への追加と同じ直列化の下で呼び出される。
+ * そのため同じ口座の取引は必ず記録順に通知される。実装は短時間で戻ること。
+ */
+public interface JournalListener {
+
+    /**
+     * @param accountNumber 口座番号
+     * @param sequence      口座内での取引の通し番号（0 始まり）
+     * @param id            取引ID
+     * @param amount        取引金額（最小単位）
+     * @param time          取引日時（エポックミリ秒）
+     * @param status        取引結果
+     * @param type          取引種類
+     * @param balanceDelta  この取引による残高の増減（最小単位）
+     */
+    void onRecorded(String accountNumber, int sequence, long id, long amount, long time,
+                    boolean status, TransactionType type, long balanceDelta);
+
+    /**
+     * 同じ口座の成功した出金 count 件をまとめて通知する（通し番号は firstSequence から連続する）。
+     * 既定の実装は1件ずつ {@link #onRecorded} を呼び出す。
+     */
+    default void onWithdrawalsRecorded(String accountNumber, int firstSequence, long[] ids, long[] amounts,
+                                       long[] times, long[] balanceDeltas, int count) {
+        for (int i = 0; i < count; i++) {
+            onRecorded(accountNumber, firstSequence + i, ids[i], amounts[i], times[i],
+                    true, TransactionType.WITHDRAW, balanceDeltas[i]);
+        }
+    }
+}
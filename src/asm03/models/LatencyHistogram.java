@@ -0,0 +1,203 @@
+package asm03.models;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間（ナノ秒）のヒストグラム。
+ * 値を 2 のべき乗ごとの区間に分け、各区間をさらに 4 分割したバケットで数える（相対誤差 25% 以内）。
+ * <ul>
+ *   <li>記録はロックを使わず、AtomicLongArray への加算 1 回（と最大値の更新）だけで行う</li>
+ *   <li>複数スレッドが同じカウンタを奪い合わないよう、スレッドごとにストライプを分けて数える</li>
+ *   <li>集計（パーセンタイル）は読み出し時に全ストライプを合算して求める</li>
+ *   <li>{@link #snapshot()} は起動からの累計、{@link #intervalSnapshot()} は前回の区間集計からの差分を集計する</li>
+ * </ul>
+ */
+public final class LatencyHistogram {
+
+    // 1つの 2 のべき乗区間を分割する数（2^SUB_BITS）
+    private static final int SUB_BITS = 2;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    // 2^42 ナノ秒（約 73 分）以上は最後のバケットにまとめる
+    private static final int MAX_EXPONENT = 42;
+    private static final int BUCKETS = MAX_EXPONENT * SUB_COUNT;
+
+    // ストライプ 1 つ分の長さ（バケット + 合計 + 最大値）。隣のストライプと同じキャッシュラインに載らないよう余白を取る
+    private static final int SUM_SLOT = BUCKETS;
+    private static final int MAX_SLOT = BUCKETS + 1;
+    private static final int STRIPE_LENGTH = BUCKETS + 2 + 8;
+
+    private static final int STRIPES = stripeCount();
+
+    private final String name;
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+
+    // 前回の区間集計の時点の累計（intervalSnapshot の中でだけ更新する）
+    private final long[] intervalBase = new long[BUCKETS];
+    private long intervalBaseSum;
+
+    // 区間集計でストライプの最大値を 0 に戻す前の最大値（累計の最大値はこれと現在のストライプの最大値から求める）
+    private volatile long maxBeforeInterval;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    private static int stripeCount() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(1, processors * 2 - 1));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 処理時間を記録する。
+     *
+     * @param nanos 処理時間（ナノ秒。負の値は 0 として扱う）
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int base = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_LENGTH;
+        cells.getAndIncrement(base + bucketOf(value));
+        cells.getAndAdd(base + SUM_SLOT, value);
+        long max = cells.get(base + MAX_SLOT);
+        while (value > max) {
+            long witness = cells.compareAndExchange(base + MAX_SLOT, max, value);
+            if (witness == max) break;
+            max = witness;
+        }
+    }
+
+    /**
+     * 開始時刻（System.nanoTime()）から現在までの時間を記録する。
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 値が属するバケット番号
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * バケットに含まれる最大の値
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        int sub = bucket % SUB_COUNT;
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+
+    /**
+     * 現在までの記録を集計する（記録と並行して呼び出せる。多少の誤差は許容する）。
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        long max = maxBeforeInterval;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            int base = stripe * STRIPE_LENGTH;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] += cells.get(base + bucket);
+            }
+            sum += cells.get(base + SUM_SLOT);
+            max = Math.max(max, cells.get(base + MAX_SLOT));
+        }
+        return summarize(counts, sum, max);
+    }
+
+    /**
+     * 前回の区間集計からの記録だけを集計する（定期的な集計処理から呼び出す）。
+     * 件数と合計は累計との差分から求め、最大値は各ストライプの最大値を 0 に戻して求めるため、
+     * 記録の処理は区間集計の有無に関係なく変わらない。
+     */
+    public synchronized Snapshot intervalSnapshot() {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        long max = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            int base = stripe * STRIPE_LENGTH;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] += cells.get(base + bucket);
+            }
+            sum += cells.get(base + SUM_SLOT);
+            // 累計の最大値が下がって見えないよう、先に退避してから 0 に戻す
+            long stripeMax = cells.get(base + MAX_SLOT);
+            maxBeforeInterval = Math.max(maxBeforeInterval, stripeMax);
+            stripeMax = cells.getAndSet(base + MAX_SLOT, 0);
+            maxBeforeInterval = Math.max(maxBeforeInterval, stripeMax);
+            max = Math.max(max, stripeMax);
+        }
+        long intervalSum = sum - intervalBaseSum;
+        intervalBaseSum = sum;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long cumulative = counts[bucket];
+            counts[bucket] = cumulative - intervalBase[bucket];
+            intervalBase[bucket] = cumulative;
+        }
+        return summarize(counts, intervalSum, max);
+    }
+
+    private Snapshot summarize(long[] counts, long sum, long max) {
+        long total = 0;
+        int highest = -1;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            total += counts[bucket];
+            if (counts[bucket] > 0) {
+                highest = bucket;
+            }
+        }
+        if (max == 0 && highest >= 0) {
+            max = upperBoundOf(highest);   // 最大値の更新より先に区間集計された記録（まれ）
+        }
+        return new Snapshot(name, total, total == 0 ? 0 : (double) sum / total,
+                percentile(counts, total, 0.50, max),
+                percentile(counts, total, 0.90, max),
+                percentile(counts, total, 0.99, max),
+                percentile(counts, total, 0.999, max),
+                max);
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long max) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 集計結果（時間はすべてナノ秒）
+     */
+    public record Snapshot(String name, long count, double mean,
+                           long p50, long p90, long p99, long p999, long max) {
+
+        @Override
+        public String toString() {
+            return String.format("%-20s count=%,d mean=%,.0f p50=%,d p90=%,d p99=%,d p99.9=%,d max=%,d (ns)",
+                    name, count, mean, p50, p90, p99, p999, max);
+        }
+    }
+}
@@ -1,51 +1,248 @@
 package asm03.models;
 
 import asm02.models.Account;
-import java.util.ArrayList;
+import asm02.models.Money;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * ローン口座クラス
  * ASM02 の {@link Account} を継承し、
- * 出金（借入）機能と利用明細（レシート出力）機能を持つクラスです。
+ * 出金（借入）機能・口座振替（返済／振替による借入）機能・利息計上機能と利用明細（レシート出力）機能を持つクラスです。
+ *
+ * 出金が集中する口座（法人口座など）は、口座のロックの奪い合いを検出すると自動的にストライプ方式
+ * （{@link StripedBalance}）に切り替わる。ストライプ方式では残りの利用枠をストライプごとに配分しておき、
+ * 枠に収まる出金は口座のロックを取らずに受け付ける。受け付けた出金はストライプごとの列に積み、口座のロックが
+ * 空いたときに取ったスレッドがまとめて取引履歴と変更ログに記録する。枠に収まらない出金・返済などはロックを取って処理し、
+ * その際にストライプの利用額を残高に反映して枠を配分し直す。配分は限度額と最低利用可能枠、および
+ * 会員区分（手数料率）が変わらない範囲に限るため、判定結果はロック方式と変わらない。
+ * ストライプ方式の間、顧客・銀行全体の集計値にはロックを取る処理のたびにまとめて反映される。
  */
-public class LoanAccount extends Account implements Withdraw, ReportService {
+public class LoanAccount extends Account implements Withdraw, Transfer, Accrual, ReportService {
 
-    // 一般会員の手数料率：5%
-    public static final double LOAN_ACCOUNT_WITHDRAW_FEE = 0.05;
+    // 一般会員の手数料率：5%（ベーシスポイント）
+    public static final long LOAN_ACCOUNT_WITHDRAW_FEE_BPS = 500;
 
-    // プレミアム会員の手数料率：1%
-    public static final double LOAN_ACCOUNT_WITHDRAW_PREMIUM_FEE = 0.01;
+    // プレミアム会員の手数料率：1%（ベーシスポイント）
+    public static final long LOAN_ACCOUNT_WITHDRAW_PREMIUM_FEE_BPS = 100;
 
     // ローン利用限度額（100,000,000 VND）
-    public static final double LOAN_ACCOUNT_MAX_BALANCE = 100_000_000;
+    public static final long LOAN_ACCOUNT_MAX_BALANCE = Money.ofUnits(100_000_000);
 
-    // この口座に紐づく取引履歴（出金のみを想定）
-    private final List<Transaction> transactions = new ArrayList<>();
+    // 出金後に残すべき最低利用可能枠（50,000 VND）
+    public static final long LOAN_ACCOUNT_MIN_REMAINING_LIMIT = Money.ofUnits(50_000);
+
+    // 一般会員のローン利率：年 12%（ベーシスポイント）
+    public static final long LOAN_ACCOUNT_INTEREST_BPS = 1_200;
+
+    // プレミアム会員のローン利率：年 9%（ベーシスポイント）
+    public static final long LOAN_ACCOUNT_PREMIUM_INTEREST_BPS = 900;
+
+    // ストライプ方式に切り替える、ロックの奪い合いの回数（HOT_ACCOUNT_WINDOW_NANOS の間に）
+    public static final int HOT_ACCOUNT_CONTENTION_THRESHOLD = 64;
+    private static final long HOT_ACCOUNT_WINDOW_NANOS = 1_000_000_000L;
+
+    // ストライプ1つあたりの枠の最小額（これ未満しか配分できない場合は、すべてロックを取って処理する）
+    private static final long HOT_ACCOUNT_MIN_STRIPE_BUDGET = Money.ofUnits(1_000_000);
+
+    // この口座に紐づく取引履歴（出金のみを想定。実体は共有の取引ジャーナル）
+    private final AccountHistory history = new AccountHistory(TransactionJournal.shared());
+
+    // 最後に利息を計上した営業日（エポック日。口座のロックで保護する）
+    private long lastAccrualDay = Long.MIN_VALUE;
+
+    // ストライプ方式の利用枠（ロック方式の場合は null）
+    private volatile StripedBalance striped;
+
+    // ロックの奪い合いの回数と、数え始めた時刻
+    private final AtomicInteger contentions = new AtomicInteger();
+    private volatile long contentionWindowStart = System.nanoTime();
 
     /**
      * コンストラクタ
      * @param accountNumber 口座番号
-     * @param initUsed      初期利用額（すでに借入済みの金額として扱う）
+     * @param initUsed      初期利用額（最小単位。すでに借入済みの金額として扱う）
      */
-    public LoanAccount(String accountNumber, double initUsed) {
+    public LoanAccount(String accountNumber, long initUsed) {
         // 親クラス Account の balance を「すでに利用した金額」として使う
         super(accountNumber, initUsed);
     }
 
     /**
-     * 現在の会員種別に応じた手数料率を返す。
+     * ローン口座の残高は「すでに利用した金額」（借入）を表す。
+     */
+    @Override
+    public boolean isLiability() {
+        return true;
+    }
+
+    /**
+     * 利用額を返す。
+     * ストライプ方式の場合、口座のロックを持つスレッドからの呼び出しではストライプの利用額を残高に反映してから
+     * 確定値を返し、それ以外ではまだ反映していない額を加えた概算を返す。
+     */
+    @Override
+    public long getBalance() {
+        StripedBalance current = striped;
+        if (current == null) {
+            return super.getBalance();
+        }
+        if (getLock().isHeldByCurrentThread()) {
+            settle(current);
+            return super.getBalance();
+        }
+        return super.getBalance() + current.pending();
+    }
+
+    /**
+     * 利用額を設定する。ストライプ方式の場合は、先にストライプの利用額を残高に反映し、
+     * 設定後に新しい利用額で枠を配分し直す（振替・利息計上の後もロックなしの出金を続けられるようにする）。
+     * 読み出し（getBalance）だけでは配分し直さない。呼び出し側がロック内で確認した空き枠を、
+     * 配分した枠の出金で使ってしまわないようにするため。
+     */
+    @Override
+    public void setBalance(long balance) {
+        StripedBalance current = striped;
+        if (current == null) {
+            super.setBalance(balance);
+            return;
+        }
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            settle(current);
+            super.setBalance(balance);
+            refill();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ストライプの枠を回収し、受け付け済みの出金額を残高に反映する（口座のロック下で呼び出す）。
+     */
+    private void settle(StripedBalance current) {
+        long reserved = current.settle(() -> recordDraws(current));
+        if (reserved > 0) {
+            super.setBalance(super.getBalance() + reserved);
+        }
+    }
+
+    /**
+     * ストライプに積まれた未記録の出金をまとめて取引履歴（と変更ログ）に記録する（口座のロック下で呼び出す）。
+     */
+    private void recordDraws(StripedBalance current) {
+        StripedBalance.Draw first = current.drain();
+        if (first == null) return;
+        int count = 0;
+        for (StripedBalance.Draw draw = first; draw != null; draw = draw.next) {
+            count++;
+        }
+        long[] amounts = new long[count];
+        long[] balanceDeltas = new long[count];
+        long total = 0;
+        int i = 0;
+        for (StripedBalance.Draw draw = first; draw != null; draw = draw.next, i++) {
+            amounts[i] = draw.amount;
+            balanceDeltas[i] = draw.balanceDelta;
+            total += draw.balanceDelta;
+        }
+        history.recordWithdrawals(getAccountNumber(), amounts, balanceDeltas, count);
+        current.applied(total);
+
+        long appendedSeq = WriteAheadLog.lastAppended();
+        for (StripedBalance.Draw draw = first; draw != null; ) {
+            StripedBalance.Draw next = draw.next;
+            draw.recorded(appendedSeq);
+            draw = next;
+        }
+    }
+
+    /**
+     * ストライプに枠を配分し直す（口座のロック下、settle の後に呼び出す）。
+     * 一般会員の場合は、プレミアムの閾値に届かない範囲だけを配分する（配分中に手数料率が変わらないようにする）。
+     */
+    private void refill() {
+        long used = getBalance();
+        boolean premium = isPremium();
+        StripedBalance current = striped;
+        if (current.isPremium() != premium) {
+            current = new StripedBalance(premium);
+            striped = current;
+        }
+        long headroom = LOAN_ACCOUNT_MAX_BALANCE - LOAN_ACCOUNT_MIN_REMAINING_LIMIT - used;
+        if (!premium) {
+            headroom = Math.min(headroom, PREMIUM_THRESHOLD - 1 - used);
+        }
+        current.refill(headroom, HOT_ACCOUNT_MIN_STRIPE_BUDGET);
+    }
+
+    /**
+     * ストライプ方式に切り替える（ロックの奪い合いが続く場合は自動的に切り替わる）。
+     */
+    public void enableStripedBalance() {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            if (striped == null) {
+                striped = new StripedBalance(isPremium());
+                refill();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ロック方式に戻す（ストライプの利用額は残高に反映する）。
+     */
+    public void disableStripedBalance() {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            StripedBalance current = striped;
+            if (current != null) {
+                settle(current);
+                striped = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ストライプ方式かどうか
+     */
+    public boolean isStripedBalance() {
+        return striped != null;
+    }
+
+    /**
+     * ロックの奪い合いを数え、一定時間内に閾値に達したら true を返す。
+     */
+    private boolean contentionDetected() {
+        long now = System.nanoTime();
+        if (now - contentionWindowStart > HOT_ACCOUNT_WINDOW_NANOS) {
+            contentionWindowStart = now;
+            contentions.set(0);
+        }
+        return contentions.incrementAndGet() >= HOT_ACCOUNT_CONTENTION_THRESHOLD;
+    }
+
+    /**
+     * 現在の会員種別に応じた手数料率（ベーシスポイント）を返す。
      * プレミアム会員なら 1%、それ以外は 5%。
      */
-    private double feeRate() {
-        return isPremium() ? LOAN_ACCOUNT_WITHDRAW_PREMIUM_FEE : LOAN_ACCOUNT_WITHDRAW_FEE;
+    private long feeRateBps() {
+        return isPremium() ? LOAN_ACCOUNT_WITHDRAW_PREMIUM_FEE_BPS : LOAN_ACCOUNT_WITHDRAW_FEE_BPS;
     }
 
     /**
-     * 与えられた金額に対する手数料額を計算する。
+     * 与えられた金額に対する手数料額を計算する（最小単位、端数は四捨五入）。
      */
-    public double getFee(double amount) {
-        return amount * feeRate();
+    public long getFee(long amount) {
+        return Money.percentOf(amount, feeRateBps());
     }
 
     /**
@@ -56,65 +253,216 @@ public class LoanAccount extends Account implements Withdraw, ReportService {
      * - 処理後の「残り利用可能枠」が 50,000 以上残っていること
      */
     @Override
-    public boolean isAccepted(double amount) {
-        if (amount <= 0) return false;
+    public boolean isAccepted(long amount) {
+        if (amount <= 0 || amount > LOAN_ACCOUNT_MAX_BALANCE) return false;
 
-        double fee = getFee(amount);
-        double usedAmountAfter = getBalance() + amount + fee;        // 出金後の利用額
+        long fee = getFee(amount);
+        long usedAmountAfter = getBalance() + amount + fee;          // 出金後の利用額
 
         // 利用額が限度額を超える場合は不可
         if (usedAmountAfter > LOAN_ACCOUNT_MAX_BALANCE) return false;
 
-        double remainingLimit = LOAN_ACCOUNT_MAX_BALANCE - usedAmountAfter;
+        long remainingLimit = LOAN_ACCOUNT_MAX_BALANCE - usedAmountAfter;
         // 残り利用可能枠が 50,000 未満なら不可
-        return remainingLimit >= 50_000;
+        return remainingLimit >= LOAN_ACCOUNT_MIN_REMAINING_LIMIT;
     }
 
     /**
      * 出金（借入）処理を実行する。
      * - 許可される場合: 利用額(balance)を増やし、成功の取引履歴を追加し、レシートを出力する。
      * - 許可されない場合: 失敗の取引履歴のみを追加する。
+     * 判定から利用額の更新までは口座単位のロック内で行うため、同時に呼び出されても限度額を超えない。
      */
     @Override
-    public boolean withdraw(double amount) {
-        boolean accepted = isAccepted(amount);
+    public boolean withdraw(long amount) {
+        return withdraw(amount, true);
+    }
 
-        if (accepted) {
-            double fee = getFee(amount);
-            // balance は「すでに利用した金額」として扱うため、借入＋手数料分を加算
-            setBalance(getBalance() + amount + fee);
+    /**
+     * レシートを出力せずに出金処理を実行する（一括出金用）。
+     */
+    @Override
+    public boolean withdrawWithoutReceipt(long amount) {
+        return withdraw(amount, false);
+    }
 
-            transactions.add(new Transaction(getAccountNumber(), amount, true));
-            log(amount);
-        } else {
-            transactions.add(new Transaction(getAccountNumber(), amount, false));
+    private boolean withdraw(long amount, boolean printReceipt) {
+        StripedBalance current = striped;
+        if (current != null && withdrawStriped(current, amount, printReceipt)) {
+            return true;
+        }
+
+        ReceiptSink.Receipt receipt = null;
+        boolean accepted;
+        ReentrantLock lock = getLock();
+        boolean contended = !lock.tryLock();
+        if (contended) {
+            lock.lock();
+        }
+        try {
+            if (contended && striped == null && contentionDetected()) {
+                striped = new StripedBalance(isPremium());   // 処理の最後に枠を配分する
+            }
+            long start = System.nanoTime();
+            accepted = isAccepted(amount);
+            BankMetrics.global().acceptanceCheckLatency().recordSince(start);
+
+            if (accepted) {
+                long fee = getFee(amount);
+                // balance は「すでに利用した金額」として扱うため、借入＋手数料分を加算
+                setBalance(getBalance() + amount + fee);
+
+                history.record(getAccountNumber(), amount, true, TransactionType.WITHDRAW, amount + fee);
+                if (printReceipt) {
+                    receipt = receipt(amount);   // 内容だけ確定させ、出力キューへはロックの外で積む
+                }
+            } else {
+                history.record(getAccountNumber(), amount, false, TransactionType.WITHDRAW, 0);
+                if (striped != null) {
+                    refill();   // 受け付けた場合は setBalance の中で配分し直している
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (receipt != null) {
+            ReceiptSink.shared().submit(receipt);
         }
         return accepted;
     }
 
     /**
-     * ローン出金レシートをコンソールに表示する。
+     * ストライプの枠に収まる出金をロックを取らずに受け付ける。
+     * 枠が足りない場合は false を返し、呼び出し側がロックを取って判定し直す（ここでは拒否しない）。
+     * 受け付けた出金は自スレッドのストライプの列に積み、取引履歴に記録されるまで待ってから戻る
+     * （{@link #awaitRecorded}。戻った後の呼び出し側の fsync 待ちは、記録を代わりに追記した分まで待つ）。
+     * 受け付けた場合は枠の確保を出金可否の判定として処理時間を記録する（出金の結果はロック方式と同じく
+     * 呼び出し側の DigitalBank が記録する）。
+     */
+    private boolean withdrawStriped(StripedBalance current, long amount, boolean printReceipt) {
+        if (amount <= 0 || amount > LOAN_ACCOUNT_MAX_BALANCE) return false;
+        long start = System.nanoTime();
+        long fee = Money.percentOf(amount,
+                current.isPremium() ? LOAN_ACCOUNT_WITHDRAW_PREMIUM_FEE_BPS : LOAN_ACCOUNT_WITHDRAW_FEE_BPS);
+        if (!current.tryReserve(amount + fee)) return false;
+        BankMetrics.global().acceptanceCheckLatency().recordSince(start);
+
+        StripedBalance.Draw draw = new StripedBalance.Draw(amount, amount + fee);
+        current.publish(draw);
+        awaitRecorded(current, draw);
+        if (printReceipt) {
+            log(amount);
+        }
+        return true;
+    }
+
+    /**
+     * ストライプに積んだ出金が記録されるまで待つ。
+     * 口座のロックが空いていれば取って、その時点で積まれている全ストライプの出金をまとめて記録する
+     * （ロックを取れたスレッドが記録役を兼ねるため、出金ごとにロックを受け渡さない）。
+     */
+    private void awaitRecorded(StripedBalance current, StripedBalance.Draw draw) {
+        ReentrantLock lock = getLock();
+        while (!draw.isRecorded()) {
+            if (!lock.isLocked() && lock.tryLock()) {
+                try {
+                    recordDraws(current);
+                } finally {
+                    lock.unlock();
+                }
+            } else {
+                Thread.yield();
+            }
+        }
+        WriteAheadLog.inheritAppended(draw.appendedSeq());
+    }
+
+    /**
+     * 振替元として借り入れできるかどうかを判定する。
+     * 振替による借入は手数料なしとし、借入後も残り利用可能枠が 50,000 以上残ることを条件とする。
+     */
+    @Override
+    public boolean canTransferOut(long amount) {
+        return amount > 0
+                && amount <= LOAN_ACCOUNT_MAX_BALANCE - LOAN_ACCOUNT_MIN_REMAINING_LIMIT - getBalance();
+    }
+
+    @Override
+    public void transferOut(long amount) {
+        setBalance(getBalance() + amount);
+        history.record(getAccountNumber(), amount, true, TransactionType.TRANSFER_OUT, amount);
+    }
+
+    /**
+     * 振替先（返済）として受け入れられるかどうかを判定する。
+     * 返済額は現在の利用額以下でなければならない（過払いは不可）。
+     */
+    @Override
+    public boolean canTransferIn(long amount) {
+        return amount > 0 && amount <= getBalance();
+    }
+
+    @Override
+    public void transferIn(long amount) {
+        setBalance(getBalance() - amount);
+        history.record(getAccountNumber(), amount, true, TransactionType.TRANSFER_IN, -amount);
+    }
+
+    @Override
+    public long getLastAccrualDay() {
+        return lastAccrualDay;
+    }
+
+    @Override
+    public void setLastAccrualDay(long epochDay) {
+        lastAccrualDay = epochDay;
+    }
+
+    /**
+     * 1日分の支払利息（利用額 × 年利率 ÷ 365、端数切り捨て）。
+     * 利息は限度額に関係なく計上する（限度額を超えた場合は以降の借入が拒否される）。
      */
     @Override
-    public void log(double amount) {
-        double fee = getFee(amount);
-        double usedAmount = getBalance();
-        double remainingLimit = LOAN_ACCOUNT_MAX_BALANCE - usedAmount;
+    public long dailyAccrual() {
+        long used = getBalance();
+        if (used <= 0) return 0;
+        return Money.dailyOf(used, isPremium() ? LOAN_ACCOUNT_PREMIUM_INTEREST_BPS : LOAN_ACCOUNT_INTEREST_BPS);
+    }
 
-        System.out.println("+--------------------------+");
-        System.out.println("|   　ローン出金レシート    　|");
-        System.out.println("+--------------------------+");
-        System.out.printf("| 口座番号 : %s%n", getAccountNumber());
-        System.out.printf("| 出金額   : %,.0f%n", amount);
-        System.out.printf("| 手数料   : %,.0f (%.2f%%)%n", fee, feeRate() * 100);
-        System.out.printf("| 残り利用可能枠 : %,.0f%n", remainingLimit);
-        System.out.println("+--------------------------+");
+    /**
+     * ローン出金レシートを作成する（表示内容はこの時点の値で確定させる）。
+     */
+    @Override
+    public ReceiptSink.Receipt receipt(long amount) {
+        String accountNumber = getAccountNumber();
+        long fee = getFee(amount);
+        long feeRateBps = feeRateBps();
+        long remainingLimit = LOAN_ACCOUNT_MAX_BALANCE - getBalance();
+
+        return out -> {
+            out.format("+--------------------------+%n");
+            out.format("|   　ローン出金レシート    　|%n");
+            out.format("+--------------------------+%n");
+            out.format("| 口座番号 : %s%n", accountNumber);
+            out.format("| 出金額   : %s%n", Money.formatUnits(amount));
+            out.format("| 手数料   : %s (%.2f%%)%n", Money.formatUnits(fee), feeRateBps / 100.0);
+            out.format("| 残り利用可能枠 : %s%n", Money.formatUnits(remainingLimit));
+            out.format("+--------------------------+%n");
+        };
     }
 
     /**
-     * このローン口座に紐づく取引履歴一覧を返す。
+     * このローン口座に紐づく取引履歴一覧を返す（呼び出し時点までの取引を対象とする読み取り専用のビュー）。
      */
     public List<Transaction> getTransactions() {
-        return transactions;
+        return history.view(getAccountNumber());
+    }
+
+    /**
+     * この口座の取引履歴（ジャーナル上の行番号の一覧）を返す。
+     */
+    @Override
+    public AccountHistory getHistory() {
+        return history;
     }
 }
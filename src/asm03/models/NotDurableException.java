@@ -0,0 +1,43 @@
+package asm03.models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 取引は口座に反映されたが、変更ログへの書き込み（fsync）に失敗したことを表す例外。
+ * 残高はすでに動いているため、呼び出し側は要求を再実行せず、{@link #getResult()}（一括出金は
+ * {@link #getBatchResults()}）の結果を返すこと。
+ */
+public final class NotDurableException extends UncheckedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Enum<?> result;
+    private final WithdrawResult[] batchResults;
+
+    NotDurableException(Enum<?> result, IOException cause) {
+        super("取引は反映されましたが、変更ログの書き込みに失敗しました。", cause);
+        this.result = result;
+        this.batchResults = null;
+    }
+
+    NotDurableException(WithdrawResult[] batchResults, IOException cause) {
+        super("一括出金は反映されましたが、変更ログの書き込みに失敗しました。", cause);
+        this.result = null;
+        this.batchResults = batchResults;
+    }
+
+    /**
+     * 反映済みの処理結果（{@link WithdrawResult} または {@link TransferResult}。一括出金の場合は null）
+     */
+    public Enum<?> getResult() {
+        return result;
+    }
+
+    /**
+     * 一括出金の要求ごとの反映済みの処理結果（要求と同じ順番。一括出金以外の場合は null）
+     */
+    public WithdrawResult[] getBatchResults() {
+        return batchResults == null ? null : batchResults.clone();
+    }
+}
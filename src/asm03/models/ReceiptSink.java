@@ -0,0 +1,197 @@
+package asm03.models;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * レシートの非同期出力。
+ * 出金処理ではレシートをキューに積むだけにし、文字列の組み立てと出力は
+ * バックグラウンドのスレッドがまとめて（バッチ単位で）行う。
+ * - キューは上限付きで、満杯の場合は空きができるまで投入側を待たせる
+ * - {@link #flush()} で、それまでに投入されたレシートがすべて出力されるまで待つ（待ち時間には上限がある）
+ * - 出力スレッドが停止している場合は、投入側・flush の呼び出し側のスレッドで直接出力する
+ */
+public final class ReceiptSink {
+
+    /**
+     * 出力待ちのレシート。出力スレッドから呼び出され、内容を書き込む。
+     */
+    @FunctionalInterface
+    public interface Receipt {
+        void renderTo(Formatter out);
+    }
+
+    private static final int DEFAULT_CAPACITY = 8_192;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    // flush() の待ち時間の上限
+    private static final long DEFAULT_FLUSH_TIMEOUT_MILLIS = 10_000;
+
+    // 待っている間に出力スレッドの停止を確認する間隔
+    private static final long WRITER_CHECK_MILLIS = 100;
+
+    private static final ReceiptSink SHARED = new ReceiptSink(null, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+
+    // 出力先（null の場合は出力時点の System.out）
+    private final PrintStream target;
+    private final BlockingQueue<Receipt> queue;
+    private final int batchSize;
+    private final Thread writer;
+
+    // 投入件数（出金のたびに複数スレッドから加算されるため LongAdder を使う）
+    private final LongAdder submitted = new LongAdder();
+
+    // 出力済み件数（flush の待ち合わせに使う。このオブジェクトのロックで保護する）
+    private long written;
+
+    /**
+     * @param target    出力先（null の場合は System.out）
+     * @param capacity  キューの上限件数
+     * @param batchSize 1回にまとめて出力する最大件数
+     */
+    public ReceiptSink(PrintStream target, int capacity, int batchSize) {
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.writer = new Thread(this::drainLoop, "receipt-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 標準出力に書き出す共有のレシート出力を返す。
+     */
+    public static ReceiptSink shared() {
+        return SHARED;
+    }
+
+    /**
+     * レシートを出力キューに積む。キューが満杯の場合は空きができるまで待つ。
+     * 口座のロックを保持したまま呼び出さないこと（満杯の間、その口座の処理が止まるため）。
+     */
+    public void submit(Receipt receipt) {
+        submitted.increment();
+        try {
+            // 出力スレッドが停止している場合は空きができないため、その場で出力する
+            while (!queue.offer(receipt, WRITER_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) {
+                    writeNow(receipt);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // 割り込まれた場合はその場で出力し、割り込み状態を戻す
+            Thread.currentThread().interrupt();
+            writeNow(receipt);
+        }
+    }
+
+    /**
+     * それまでに投入されたレシートがすべて出力されるまで待つ（終了時などに呼び出す）。
+     * 待ち時間の上限は {@value #DEFAULT_FLUSH_TIMEOUT_MILLIS} ミリ秒。
+     *
+     * @return すべて出力された場合は true、時間内に出力されなかった場合は false
+     */
+    public boolean flush() {
+        return flush(DEFAULT_FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * それまでに投入されたレシートがすべて出力されるまで、指定時間を上限に待つ。
+     * 出力スレッドが停止している場合は、キューに残っているレシートを呼び出し元のスレッドで出力する。
+     *
+     * @return すべて出力された場合は true、時間内に出力されなかった場合は false
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        long target = submitted.sum();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean interrupted = false;
+        try {
+            synchronized (this) {
+                while (written < target && writer.isAlive()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this,
+                                Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(WRITER_CHECK_MILLIS)));
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (written >= target) {
+                    return true;
+                }
+            }
+            Receipt receipt;
+            while ((receipt = queue.poll()) != null) {
+                writeNow(receipt);
+            }
+            synchronized (this) {
+                return written >= target;
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * レシートを呼び出し元のスレッドで出力する。
+     */
+    private void writeNow(Receipt receipt) {
+        StringBuilder text = new StringBuilder();
+        render(receipt, new Formatter(text), text);
+        write(text, 1);
+    }
+
+    /**
+     * 出力スレッドの処理：キューから取り出せるだけ取り出し、まとめて1回で書き出す。
+     */
+    private void drainLoop() {
+        List<Receipt> batch = new ArrayList<>(batchSize);
+        StringBuilder text = new StringBuilder(batchSize * 256);
+        Formatter formatter = new Formatter(text);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+
+            for (Receipt receipt : batch) {
+                render(receipt, formatter, text);
+            }
+            write(text, batch.size());
+            text.setLength(0);
+            batch.clear();
+        }
+    }
+
+    private static void render(Receipt receipt, Formatter formatter, StringBuilder text) {
+        try {
+            receipt.renderTo(formatter);
+        } catch (RuntimeException e) {
+            text.append("レシートの出力に失敗しました: ").append(e).append(System.lineSeparator());
+        }
+    }
+
+    private void write(CharSequence text, int count) {
+        PrintStream out = target != null ? target : System.out;
+        out.print(text);
+        out.flush();
+        synchronized (this) {
+            written += count;
+            notifyAll();
+        }
+    }
+}
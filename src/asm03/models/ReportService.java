@@ -7,8 +7,20 @@ public interface ReportService {
 
     /**
      * 出金金額を受け取り、レシート情報を表示・出力する。
+     * 出力は {@link ReceiptSink} が非同期に行う。
      *
-     * @param amount 出金額
+     * @param amount 出金額（最小単位）
      */
-    void log(double amount);
+    default void log(long amount) {
+        ReceiptSink.shared().submit(receipt(amount));
+    }
+
+    /**
+     * 出金直後の口座の値でレシートの内容を確定させる（出金処理のロック内で呼び出される）。
+     * 出力キューへの投入はロックを解放してから行う。
+     *
+     * @param amount 出金額（最小単位）
+     * @return 出力待ちのレシート
+     */
+    ReceiptSink.Receipt receipt(long amount);
 }
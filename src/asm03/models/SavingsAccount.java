@@ -1,29 +1,48 @@
 package asm03.models;
 
 import asm02.models.Account;
-import java.util.ArrayList;
+import asm02.models.Money;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 普通預金口座（ATM口座）クラス。
  * ASM02 の {@link Account} を継承し、
- * 出金（Withdraw）とレシート出力（ReportService）に対応します。
+ * 出金（Withdraw）・口座振替（Transfer）・利息計上（Accrual）とレシート出力（ReportService）に対応します。
  */
-public class SavingsAccount extends Account implements Withdraw, ReportService {
+public class SavingsAccount extends Account implements Withdraw, Transfer, Accrual, ReportService {
 
     // 一般会員：1回の出金上限は 5,000,000 VND
-    public static final double SAVINGS_ACCOUNT_MAX_WITHDRAW = 5_000_000;
+    public static final long SAVINGS_ACCOUNT_MAX_WITHDRAW = Money.ofUnits(5_000_000);
 
-    // この口座に紐づく出金取引履歴
-    private final List<Transaction> transactions = new ArrayList<>();
+    // 最低出金額：50,000 VND
+    public static final long SAVINGS_ACCOUNT_MIN_WITHDRAW = Money.ofUnits(50_000);
+
+    // 出金額の単位：10,000 VND の倍数
+    public static final long SAVINGS_ACCOUNT_WITHDRAW_STEP = Money.ofUnits(10_000);
+
+    // 出金後に残すべき最低残高：50,000 VND
+    public static final long SAVINGS_ACCOUNT_MIN_REMAINING = Money.ofUnits(50_000);
+
+    // 一般会員の預金利率：年 0.5%（ベーシスポイント）
+    public static final long SAVINGS_ACCOUNT_INTEREST_BPS = 50;
+
+    // プレミアム会員の預金利率：年 1%（ベーシスポイント）
+    public static final long SAVINGS_ACCOUNT_PREMIUM_INTEREST_BPS = 100;
+
+    // この口座に紐づく出金取引履歴（実体は共有の取引ジャーナル）
+    private final AccountHistory history = new AccountHistory(TransactionJournal.shared());
+
+    // 最後に利息を計上した営業日（エポック日。口座のロックで保護する）
+    private long lastAccrualDay = Long.MIN_VALUE;
 
     /**
      * コンストラクタ
      *
      * @param accountNumber 口座番号
-     * @param initBalance   初期残高
+     * @param initBalance   初期残高（最小単位）
      */
-    public SavingsAccount(String accountNumber, double initBalance) {
+    public SavingsAccount(String accountNumber, long initBalance) {
         super(accountNumber, initBalance);
     }
 
@@ -36,56 +55,146 @@ public class SavingsAccount extends Account implements Withdraw, ReportService {
      * - 出金後の残高が 50,000 以上残ること
      */
     @Override
-    public boolean isAccepted(double amount) {
-        if (amount < 50_000) return false;                   // 最低 50,000
-        if (amount % 10_000 != 0) return false;              // 10,000 の倍数
+    public boolean isAccepted(long amount) {
+        if (amount < SAVINGS_ACCOUNT_MIN_WITHDRAW) return false;          // 最低 50,000
+        if (amount % SAVINGS_ACCOUNT_WITHDRAW_STEP != 0) return false;    // 10,000 の倍数
 
         if (!isPremium() && amount > SAVINGS_ACCOUNT_MAX_WITHDRAW) {
-            return false;                                    // 一般会員は 500万まで
+            return false;                                                 // 一般会員は 500万まで
         }
 
-        double remainingBalance = getBalance() - amount;
-        return remainingBalance >= 50_000;                   // 出金後 50,000 以上残す
+        long remainingBalance = getBalance() - amount;
+        return remainingBalance >= SAVINGS_ACCOUNT_MIN_REMAINING;        // 出金後 50,000 以上残す
     }
 
     /**
      * 出金処理を実行する。
      * - 許可された場合：残高を減算し、成功の取引履歴を保存してレシートを出力
      * - 許可されない場合：失敗の取引履歴のみを保存
+     * 判定から残高更新までは口座単位のロック内で行うため、複数スレッドから同時に呼び出しても
+     * 最低残高のチェックをすり抜けることはない。
      */
     @Override
-    public boolean withdraw(double amount) {
-        boolean accepted = isAccepted(amount);
-
-        if (accepted) {
-            // 残高を減らす
-            setBalance(getBalance() - amount);
-            transactions.add(new Transaction(getAccountNumber(), amount, true));
-            log(amount);   // レシート出力
-        } else {
-            transactions.add(new Transaction(getAccountNumber(), amount, false));
+    public boolean withdraw(long amount) {
+        return withdraw(amount, true);
+    }
+
+    /**
+     * レシートを出力せずに出金処理を実行する（一括出金用）。
+     */
+    @Override
+    public boolean withdrawWithoutReceipt(long amount) {
+        return withdraw(amount, false);
+    }
+
+    private boolean withdraw(long amount, boolean printReceipt) {
+        ReceiptSink.Receipt receipt = null;
+        boolean accepted;
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            accepted = isAccepted(amount);
+            BankMetrics.global().acceptanceCheckLatency().recordSince(start);
+
+            if (accepted) {
+                // 残高を減らす
+                setBalance(getBalance() - amount);
+                history.record(getAccountNumber(), amount, true, TransactionType.WITHDRAW, -amount);
+                if (printReceipt) {
+                    receipt = receipt(amount);   // 内容だけ確定させ、出力キューへはロックの外で積む
+                }
+            } else {
+                history.record(getAccountNumber(), amount, false, TransactionType.WITHDRAW, 0);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (receipt != null) {
+            ReceiptSink.shared().submit(receipt);   // レシート出力
         }
         return accepted;
     }
 
     /**
-     * 普通預金口座の出金レシートをコンソールに表示する。
+     * 振替元として引き落とせるかどうかを判定する。
+     * 振替は ATM 出金ではないため金額の単位・1回の上限は問わず、引き落とし後に最低残高が残ることだけを条件とする。
      */
     @Override
-    public void log(double amount) {
-        System.out.println("+-----------------------------+");
-        System.out.println("|  　　普通預金 出金レシート 　  |");
-        System.out.println("+-----------------------------+");
-        System.out.printf("| 口座番号   : %s%n", getAccountNumber());
-        System.out.printf("| 出金額     : %,.0f%n", amount);
-        System.out.printf("| 出金後残高 : %,.0f%n", getBalance());
-        System.out.println("+-----------------------------+");
+    public boolean canTransferOut(long amount) {
+        return amount > 0 && getBalance() - amount >= SAVINGS_ACCOUNT_MIN_REMAINING;
+    }
+
+    @Override
+    public void transferOut(long amount) {
+        setBalance(getBalance() - amount);
+        history.record(getAccountNumber(), amount, true, TransactionType.TRANSFER_OUT, -amount);
     }
 
     /**
-     * この口座に紐づく出金取引履歴一覧を取得する。
+     * 振替先として入金できるかどうかを判定する（残高があふれない限り可）。
+     */
+    @Override
+    public boolean canTransferIn(long amount) {
+        return amount > 0 && getBalance() <= Long.MAX_VALUE - amount;
+    }
+
+    @Override
+    public void transferIn(long amount) {
+        setBalance(getBalance() + amount);
+        history.record(getAccountNumber(), amount, true, TransactionType.TRANSFER_IN, amount);
+    }
+
+    @Override
+    public long getLastAccrualDay() {
+        return lastAccrualDay;
+    }
+
+    @Override
+    public void setLastAccrualDay(long epochDay) {
+        lastAccrualDay = epochDay;
+    }
+
+    /**
+     * 1日分の受取利息（残高 × 年利率 ÷ 365、端数切り捨て）。
+     */
+    @Override
+    public long dailyAccrual() {
+        long balance = getBalance();
+        if (balance <= 0) return 0;
+        return Money.dailyOf(balance, isPremium() ? SAVINGS_ACCOUNT_PREMIUM_INTEREST_BPS : SAVINGS_ACCOUNT_INTEREST_BPS);
+    }
+
+    /**
+     * 普通預金口座の出金レシートを作成する（表示内容はこの時点の値で確定させる）。
+     */
+    @Override
+    public ReceiptSink.Receipt receipt(long amount) {
+        String accountNumber = getAccountNumber();
+        long balanceAfter = getBalance();
+        return out -> {
+            out.format("+-----------------------------+%n");
+            out.format("|  　　普通預金 出金レシート 　  |%n");
+            out.format("+-----------------------------+%n");
+            out.format("| 口座番号   : %s%n", accountNumber);
+            out.format("| 出金額     : %s%n", Money.formatUnits(amount));
+            out.format("| 出金後残高 : %s%n", Money.formatUnits(balanceAfter));
+            out.format("+-----------------------------+%n");
+        };
+    }
+
+    /**
+     * この口座に紐づく出金取引履歴一覧を取得する（呼び出し時点までの取引を対象とする読み取り専用のビュー）。
      */
     public List<Transaction> getTransactions() {
-        return transactions;
+        return history.view(getAccountNumber());
+    }
+
+    /**
+     * この口座の取引履歴（ジャーナル上の行番号の一覧）を返す。
+     */
+    @Override
+    public AccountHistory getHistory() {
+        return history;
     }
 }
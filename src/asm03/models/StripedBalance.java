@@ -0,0 +1,198 @@
+package asm03.models;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 混雑した口座（ホットな口座）向けの、ストライプに分けた利用枠の予約。
+ * 口座のロック下で残りの利用枠（ヘッドルーム）を各ストライプに配分しておき、取引は自スレッドの
+ * ストライプの枠を CAS で減らすだけで受け付ける（口座のロックも共有のカウンタも奪い合わない）。
+ * <ul>
+ *   <li>配分の合計はヘッドルームを超えないため、ロックなしで受け付けても限度額は必ず守られる</li>
+ *   <li>枠が足りない取引は呼び出し側がロックを取って処理し、{@link #settle} と {@link #refill} で配分し直す</li>
+ *   <li>受け付けた出金は {@link #publish} で自スレッドのストライプの未記録の列に積み、口座のロックを持つスレッドが
+ *       {@link #drain} で全ストライプ分をまとめて取り出して記録する（履歴と変更ログの直列化は1回分で済む）</li>
+ *   <li>記録した額は {@link #applied} で数え、{@link #settle} で口座の残高にまとめて反映する</li>
+ * </ul>
+ * drain・settle・refill は口座のロック下で呼び出すこと。
+ */
+final class StripedBalance {
+
+    // ストライプごとの値の位置（隣のストライプと同じキャッシュラインに載らないよう long 8 個 = 64 バイト空ける）
+    private static final int BUDGET = 0;      // 残りの枠
+    private static final int ALLOTTED = 1;    // 配分した枠
+    private static final int APPLIED = 2;     // 取引を記録し終えた額
+    private static final int PADDING = 8;
+
+    private final int stripes = stripeCount();
+    private final AtomicLongArray cells = new AtomicLongArray(stripes * PADDING);
+
+    // ストライプごとの未記録の出金（後に積んだものが先頭の連結リスト。参照も隣と離して置く）
+    private final AtomicReferenceArray<Draw> unrecorded = new AtomicReferenceArray<>(stripes * PADDING);
+
+    // 枠を配分したときの会員区分（配分した枠の範囲では変わらない。区分が変わる場合は作り直す）
+    private final boolean premium;
+
+    /**
+     * ロックを取らずに受け付けた1件の出金（記録されるまで {@link StripedBalance} の未記録の列に置かれる）
+     */
+    static final class Draw {
+        final long amount;          // 出金額
+        final long balanceDelta;    // 利用額の増加（出金額 + 手数料）
+        Draw next;
+
+        // 記録したスレッドが変更ログに最後に追記した記録の番号（recorded より先に書く）
+        private long appendedSeq;
+        private volatile boolean recorded;
+
+        Draw(long amount, long balanceDelta) {
+            this.amount = amount;
+            this.balanceDelta = balanceDelta;
+        }
+
+        /**
+         * 記録済みにする（記録したスレッドから呼び出す）。
+         */
+        void recorded(long appendedSeq) {
+            this.appendedSeq = appendedSeq;
+            this.recorded = true;
+        }
+
+        boolean isRecorded() {
+            return recorded;
+        }
+
+        long appendedSeq() {
+            return appendedSeq;
+        }
+    }
+
+    StripedBalance(boolean premium) {
+        this.premium = premium;
+    }
+
+    private static int stripeCount() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(1, processors * 2 - 1));
+    }
+
+    private int base() {
+        return (int) (Thread.currentThread().getId() & (stripes - 1)) * PADDING;
+    }
+
+    int stripes() {
+        return stripes;
+    }
+
+    boolean isPremium() {
+        return premium;
+    }
+
+    /**
+     * 自スレッドのストライプの枠から amount を予約する。
+     *
+     * @return 予約できた場合は true（呼び出し側は取引を記録してから {@link #applied} を呼ぶこと）
+     */
+    boolean tryReserve(long amount) {
+        int index = base() + BUDGET;
+        long budget = cells.get(index);
+        while (budget >= amount) {
+            long witness = cells.compareAndExchange(index, budget, budget - amount);
+            if (witness == budget) return true;
+            budget = witness;
+        }
+        return false;
+    }
+
+    /**
+     * 予約した額の出金を自スレッドのストライプの未記録の列に積む。
+     */
+    void publish(Draw draw) {
+        int index = base();
+        Draw head = unrecorded.get(index);
+        while (true) {
+            draw.next = head;
+            Draw witness = unrecorded.compareAndExchange(index, head, draw);
+            if (witness == head) return;
+            head = witness;
+        }
+    }
+
+    /**
+     * 全ストライプの未記録の出金を取り出す（口座のロック下で呼び出す）。
+     * ストライプごとには積んだ順に並べ、ストライプ単位でつなげた連結リストを返す（なければ null）。
+     */
+    Draw drain() {
+        Draw first = null;
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            Draw draw = unrecorded.getAndSet(stripe * PADDING, null);
+            while (draw != null) {     // 逆順に並んでいるため、先頭に付け替えながら戻す
+                Draw next = draw.next;
+                draw.next = first;
+                first = draw;
+                draw = next;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * 予約した額の取引を記録し終えたことを知らせる。
+     */
+    void applied(long amount) {
+        cells.getAndAdd(base() + APPLIED, amount);
+    }
+
+    /**
+     * 残高にまだ反映していない額（ロックなしの参照用の概算）
+     */
+    long pending() {
+        long sum = 0;
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            sum += cells.get(stripe * PADDING + APPLIED);
+        }
+        return sum;
+    }
+
+    /**
+     * 全ストライプの枠を回収し、予約済みの取引がすべて記録し終わるまで recordPending で記録しながら待ってから、
+     * その合計を返す。戻り値を口座の残高に加えること（口座のロック下で呼び出す）。
+     *
+     * @param recordPending 未記録の出金を {@link #drain} で取り出して記録する処理
+     */
+    long settle(Runnable recordPending) {
+        long reserved = 0;
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int base = stripe * PADDING;
+            reserved += cells.get(base + ALLOTTED) - cells.getAndSet(base + BUDGET, 0);
+            cells.set(base + ALLOTTED, 0);
+        }
+        // 回収後は新しい予約が入らないため、予約済みの出金が積まれるまでの短い待ちで済む
+        while (pending() < reserved) {
+            recordPending.run();
+            if (pending() < reserved) {
+                Thread.yield();
+            }
+        }
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            cells.set(stripe * PADDING + APPLIED, 0);
+        }
+        return reserved;
+    }
+
+    /**
+     * ヘッドルームを各ストライプに均等に配分する（{@link #settle} の直後に口座のロック下で呼び出す）。
+     *
+     * @param headroom         ロックなしで受け付けてよい額の合計
+     * @param minimumPerStripe 1ストライプあたりの配分がこれ未満の場合は配分しない（すべてロックを取って処理する）
+     */
+    void refill(long headroom, long minimumPerStripe) {
+        long perStripe = headroom / stripes;
+        if (perStripe < minimumPerStripe) return;
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int base = stripe * PADDING;
+            cells.set(base + ALLOTTED, perStripe);
+            cells.set(base + BUDGET, perStripe);
+        }
+    }
+}
@@ -1,60 +1,92 @@
 package asm03.models;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Random;
+import asm02.models.Money;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 /**
  * 出金取引クラス。
  * 口座の出金履歴を保存するために使用します。
+ * 取引日時はエポックミリ秒で保持し、文字列への変換は表示するとき（toString）にだけ行います。
  */
 public class Transaction {
 
-    // 取引ID生成用の文字セット
-    private static final String ID_CHARSET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
-    private static final int ID_LENGTH = 8;
+    // 取引日時の表示形式（DateTimeFormatter はスレッドセーフなので共有する）
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
 
-    private final String id;            // 取引ID
+    private final long id;              // 取引ID（TransactionIdGenerator で発行）
     private final String accountNumber; // 対象口座番号
-    private final double amount;        // 取引金額
-    private final String time;          // 取引日時（yyyy-MM-dd HH:mm:ss）
+    private final long amount;          // 取引金額（最小単位）
+    private final long time;            // 取引日時（エポックミリ秒）
     private final boolean status;       // 取引結果: true = 成功, false = 失敗
+    private final TransactionType type; // 取引種類
 
     /**
      * 新しい取引インスタンスを生成するコンストラクタ。
      *
      * @param accountNumber 対象口座番号
-     * @param amount        取引金額
+     * @param amount        取引金額（最小単位）
      * @param status        取引結果（成功 / 失敗）
      */
-    public Transaction(String accountNumber, double amount, boolean status) {
-        this.id = generateRandomId();
+    public Transaction(String accountNumber, long amount, boolean status) {
+        this.id = TransactionIdGenerator.nextId();
         this.accountNumber = accountNumber;
         this.amount = amount;
-        this.time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        this.time = TransactionIdGenerator.timestampOf(id);
         this.status = status;
+        this.type = TransactionType.WITHDRAW;
+    }
+
+    /**
+     * 取引ジャーナルに保存された値から取引インスタンスを復元するコンストラクタ。
+     */
+    Transaction(long id, String accountNumber, long amount, long time, boolean status, TransactionType type) {
+        this.id = id;
+        this.accountNumber = accountNumber;
+        this.amount = amount;
+        this.time = time;
+        this.status = status;
+        this.type = type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public long getAmount() {
+        return amount;
     }
 
     /**
-     * 固定長のランダムな取引IDを生成する。
+     * 取引日時をエポックミリ秒で返す。
      */
-    private String generateRandomId() {
-        Random random = new Random();
-        StringBuilder builder = new StringBuilder(ID_LENGTH);
-        for (int i = 0; i < ID_LENGTH; i++) {
-            int index = random.nextInt(ID_CHARSET.length());
-            builder.append(ID_CHARSET.charAt(index));
-        }
-        return builder.toString();
+    public long getTime() {
+        return time;
+    }
+
+    public boolean isSuccess() {
+        return status;
+    }
+
+    public TransactionType getType() {
+        return type;
     }
 
     @Override
     public String toString() {
-        return String.format("%s | %s | %,.0f | %s | %s",
-                id,
+        return String.format("%s | %s | %s | %s | %s | %s",
+                TransactionIdGenerator.format(id),
                 accountNumber,
-                amount,
-                time,
+                type.getLabel(),
+                Money.formatUnits(amount),
+                TIME_FORMAT.format(Instant.ofEpochMilli(time)),
                 status ? "成功" : "失敗"
         );
     }
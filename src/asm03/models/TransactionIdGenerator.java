@@ -0,0 +1,69 @@
+package asm03.models;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 取引IDの生成器。
+ * 取引IDは時刻順に並ぶ 64bit の整数で、次の構成になっている。
+ * <pre>
+ *  [ 41bit: 基準時刻からの経過ミリ秒 ][ 12bit: 同一ミリ秒内の連番 ][ 10bit: スロット番号 ]
+ * </pre>
+ * - スレッドごとにスロットを割り当て、スロット単位の状態だけを CAS で更新するため、
+ *   スレッド間で共有のロックやカウンタを奪い合わない
+ * - スロット番号が異なれば ID は重ならず、同じスロット内では ID が必ず増加するため、重複しない
+ * - 同一ミリ秒内で連番を使い切った場合は次のミリ秒を先取りする（時刻順は保たれる）
+ */
+public final class TransactionIdGenerator {
+
+    // 基準時刻（2024-01-01T00:00:00Z）
+    private static final long EPOCH_MILLIS = 1_704_067_200_000L;
+
+    private static final int SLOT_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int SLOT_COUNT = 1 << SLOT_BITS;
+
+    // スロットごとの状態の間隔（キャッシュラインの共有を避けるため 64 バイト = long 8 個分空ける）
+    private static final int PADDING = 8;
+
+    // スロットごとの最後に発行した「経過ミリ秒 + 連番」
+    private static final AtomicLongArray LAST_ISSUED = new AtomicLongArray(SLOT_COUNT * PADDING);
+
+    private static final AtomicInteger NEXT_SLOT = new AtomicInteger();
+
+    private static final ThreadLocal<int[]> SLOT =
+            ThreadLocal.withInitial(() -> new int[]{NEXT_SLOT.getAndIncrement() & (SLOT_COUNT - 1)});
+
+    private TransactionIdGenerator() {
+    }
+
+    /**
+     * 新しい取引IDを発行する。
+     */
+    public static long nextId() {
+        int slot = SLOT.get()[0];
+        int index = slot * PADDING;
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        while (true) {
+            long last = LAST_ISSUED.get(index);
+            long next = Math.max(last + 1, now);
+            if (LAST_ISSUED.compareAndSet(index, last, next)) {
+                return (next << SLOT_BITS) | slot;
+            }
+        }
+    }
+
+    /**
+     * 取引IDに含まれる発行時刻（エポックミリ秒）を返す。
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (SLOT_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    /**
+     * 取引IDを表示用の文字列（36進数・大文字）に変換する。
+     */
+    public static String format(long id) {
+        return Long.toString(id, 36).toUpperCase();
+    }
+}
@@ -0,0 +1,168 @@
+package asm03.models;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全口座で共有する列指向の取引ジャーナル。
+ * 取引を Transaction オブジェクトとしてではなく、列ごとのプリミティブ配列
+ * （口座キー・取引ID・金額・日時・結果と種類）に格納する。
+ * - 配列は固定長のチャンク単位で確保し、必要に応じてチャンクを追加する
+ * - 1件あたりのメモリは約 29 バイト（口座側の行番号索引 8 バイトを含めても 40 バイト未満）
+ * - 行の追加はロックなしで複数スレッドから行える（行番号は CAS で確保する）
+ * 書き込んだ行は {@link AccountHistory} を通じて（口座のロック下で）公開される。
+ */
+public final class TransactionJournal {
+
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // flags 列の最下位ビット：取引結果（1 = 成功）。残りのビットに取引種類を格納する
+    private static final int STATUS_BIT = 1;
+
+    private static final TransactionJournal SHARED = new TransactionJournal();
+
+    /**
+     * 1チャンク分の列
+     */
+    private static final class Chunk {
+        final int[] accountKeys = new int[CHUNK_SIZE];
+        final long[] ids = new long[CHUNK_SIZE];
+        final long[] amounts = new long[CHUNK_SIZE];
+        final long[] times = new long[CHUNK_SIZE];
+        final byte[] flags = new byte[CHUNK_SIZE];
+    }
+
+    private volatile Chunk[] chunks = new Chunk[16];
+
+    private final AtomicLong nextRow = new AtomicLong();
+
+    // 取引の記録の通知先（未設定の場合は null）
+    private volatile JournalListener listener;
+
+    /**
+     * アプリケーション全体で共有するジャーナルを返す。
+     */
+    public static TransactionJournal shared() {
+        return SHARED;
+    }
+
+    /**
+     * 取引の記録の通知先を設定する（null で解除）。
+     */
+    public void setListener(JournalListener listener) {
+        this.listener = listener;
+    }
+
+    JournalListener listener() {
+        return listener;
+    }
+
+    /**
+     * 口座番号（6桁の数字）をジャーナル用の整数キーに変換する。文字列は生成しない。
+     */
+    public static int accountKey(String accountNumber) {
+        int key = 0;
+        for (int i = 0; i < accountNumber.length(); i++) {
+            key = key * 10 + (accountNumber.charAt(i) - '0');
+        }
+        return key;
+    }
+
+    /**
+     * 口座キーを 6 桁の口座番号に戻す（accountKey の逆変換）。
+     */
+    public static String accountNumber(int accountKey) {
+        char[] digits = new char[6];
+        for (int i = 5; i >= 0; i--) {
+            digits[i] = (char) ('0' + accountKey % 10);
+            accountKey /= 10;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * 取引を1行追加し、行番号を返す。
+     */
+    public long append(int accountKey, long id, long amount, long time, boolean status, TransactionType type) {
+        long row = nextRow.getAndIncrement();
+        Chunk chunk = chunkForWrite(row);
+        int offset = (int) (row & CHUNK_MASK);
+        chunk.accountKeys[offset] = accountKey;
+        chunk.ids[offset] = id;
+        chunk.amounts[offset] = amount;
+        chunk.times[offset] = time;
+        chunk.flags[offset] = (byte) ((type.ordinal() << 1) | (status ? STATUS_BIT : 0));
+        return row;
+    }
+
+    /**
+     * 書き込み先のチャンクを返す。未確保の場合だけロックを取って確保する。
+     */
+    private Chunk chunkForWrite(long row) {
+        int index = (int) (row >>> CHUNK_SHIFT);
+        Chunk[] current = chunks;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (index >= current.length) {
+                Chunk[] grown = new Chunk[Math.max(current.length * 2, index + 1)];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            if (current[index] == null) {
+                current[index] = new Chunk();
+            }
+            chunks = current;
+            return current[index];
+        }
+    }
+
+    private Chunk chunk(long row) {
+        return chunks[(int) (row >>> CHUNK_SHIFT)];
+    }
+
+    /**
+     * これまでに確保された行数を返す。
+     */
+    public long size() {
+        return nextRow.get();
+    }
+
+    public int accountKey(long row) {
+        return chunk(row).accountKeys[(int) (row & CHUNK_MASK)];
+    }
+
+    public long id(long row) {
+        return chunk(row).ids[(int) (row & CHUNK_MASK)];
+    }
+
+    public long amount(long row) {
+        return chunk(row).amounts[(int) (row & CHUNK_MASK)];
+    }
+
+    public long time(long row) {
+        return chunk(row).times[(int) (row & CHUNK_MASK)];
+    }
+
+    public boolean status(long row) {
+        return (chunk(row).flags[(int) (row & CHUNK_MASK)] & STATUS_BIT) != 0;
+    }
+
+    public TransactionType type(long row) {
+        return TransactionType.ofCode(chunk(row).flags[(int) (row & CHUNK_MASK)] >>> 1);
+    }
+
+    /**
+     * 指定した行を Transaction オブジェクトとして取り出す（表示用）。
+     */
+    public Transaction toTransaction(long row, String accountNumber) {
+        Chunk chunk = chunk(row);
+        int offset = (int) (row & CHUNK_MASK);
+        byte flag = chunk.flags[offset];
+        return new Transaction(chunk.ids[offset], accountNumber, chunk.amounts[offset], chunk.times[offset],
+                (flag & STATUS_BIT) != 0, TransactionType.ofCode(flag >>> 1));
+    }
+}
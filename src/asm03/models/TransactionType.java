@@ -0,0 +1,34 @@
+package asm03.models;
+
+/**
+ * 取引の種類。
+ * 取引ジャーナルには ordinal を 1 バイトに詰めて保存するため、定数は末尾にのみ追加すること。
+ */
+public enum TransactionType {
+    WITHDRAW("出金"),
+    TRANSFER_OUT("振替出金"),
+    TRANSFER_IN("振替入金"),
+    INTEREST("利息");
+
+    private static final TransactionType[] VALUES = values();
+
+    private final String label;
+
+    TransactionType(String label) {
+        this.label = label;
+    }
+
+    /**
+     * 表示用の名称を返す。
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * ジャーナルに保存されたコードから種類を復元する。
+     */
+    static TransactionType ofCode(int code) {
+        return VALUES[code];
+    }
+}
@@ -0,0 +1,30 @@
+package asm03.models;
+
+/**
+ * 口座振替のためのインターフェース。
+ * 振替元（引き落とし）・振替先（入金）としての可否チェックと、残高の更新を定義します。
+ * 残高の更新は {@link DigitalBank#transfer} が両方の口座のロックを取得した状態で呼び出します。
+ * 金額はすべて最小単位（{@link asm02.models.Money} 参照）の long で扱います。
+ */
+public interface Transfer extends HistoryProvider {
+
+    /**
+     * 振替元として指定された金額を引き落とせるかどうかを判定する。
+     */
+    boolean canTransferOut(long amount);
+
+    /**
+     * 振替元として引き落とし、取引履歴に記録する（口座のロック下で呼び出すこと）。
+     */
+    void transferOut(long amount);
+
+    /**
+     * 振替先として指定された金額を受け入れられるかどうかを判定する。
+     */
+    boolean canTransferIn(long amount);
+
+    /**
+     * 振替先として入金し、取引履歴に記録する（口座のロック下で呼び出すこと）。
+     */
+    void transferIn(long amount);
+}
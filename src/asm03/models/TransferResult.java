@@ -0,0 +1,30 @@
+package asm03.models;
+
+/**
+ * 口座振替の処理結果。
+ */
+public enum TransferResult {
+    SUCCESS("成功"),
+    REJECTED("振替条件を満たさない"),
+    ACCOUNT_NOT_FOUND("口座が存在しない"),
+    CUSTOMER_MISMATCH("口座の保有者と個人番号が一致しない"),
+    NOT_TRANSFERABLE("振替に対応していない口座"),
+    SAME_ACCOUNT("振替元と振替先が同じ口座");
+
+    private final String label;
+
+    TransferResult(String label) {
+        this.label = label;
+    }
+
+    /**
+     * 表示用の説明を返す。
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+}
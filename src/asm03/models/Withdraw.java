@@ -3,22 +3,34 @@ package asm03.models;
 /**
  * 出金処理のためのインターフェース。
  * 口座からの出金可否チェックと、実際の出金処理を定義します。
+ * 金額はすべて最小単位（{@link asm02.models.Money} 参照）の long で扱います。
  */
 public interface Withdraw {
 
     /**
      * 出金処理を実行する。
      *
-     * @param amount 出金額
+     * @param amount 出金額（最小単位）
      * @return 出金に成功した場合は true、失敗した場合は false
      */
-    boolean withdraw(double amount);
+    boolean withdraw(long amount);
+
+    /**
+     * レシートを出力せずに出金処理を実行する。
+     * 一括出金など、レシートを呼び出し側でまとめて出力する場合に使用する。
+     *
+     * @param amount 出金額（最小単位）
+     * @return 出金に成功した場合は true、失敗した場合は false
+     */
+    default boolean withdrawWithoutReceipt(long amount) {
+        return withdraw(amount);
+    }
 
     /**
      * 指定された金額の出金が可能かどうかを判定する。
      *
-     * @param amount 出金額
+     * @param amount 出金額（最小単位）
      * @return 出金可能であれば true、不可能であれば false
      */
-    boolean isAccepted(double amount);
+    boolean isAccepted(long amount);
 }
@@ -0,0 +1,167 @@
+package asm03.models;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 出金要求の重複排除キャッシュ（ATM 網の再送対策）。
+ * 要求IDごとに最初の処理結果を覚えておき、同じ要求IDの再送には口座に触れずに同じ結果を O(1) で返す。
+ * <ul>
+ *   <li>処理中の要求と同じ要求IDが届いた場合は、最初の処理が終わるのを待って同じ結果を返す</li>
+ *   <li>再送に結果を返すのは最初の処理の fsync 待ちが終わってから（永続化されていない出金を成功として返さない）</li>
+ *   <li>fsync 待ちで失敗した要求の再送には同じ例外を返す（出金はすでに反映されているため、再び出金しない）</li>
+ *   <li>口座を更新する前に失敗した要求の再送は、待っていたものも含めて最初から処理し直す</li>
+ *   <li>登録から保持期間（TTL）を過ぎた結果、または件数の上限を超えた古い結果から順に捨てる（処理中のものは捨てない）</li>
+ *   <li>件数の上限があるため、要求数が増えても使用メモリは一定に収まる</li>
+ * </ul>
+ * 要求IDだけで同一の要求とみなす（再送時に金額などが変わっていても、最初の結果を返す）。
+ * 件数の上限は処理中の要求の分だけ一時的に超えることがある。
+ */
+public final class WithdrawDedupCache {
+
+    /**
+     * 1件の要求IDの記録
+     */
+    private record Entry(String requestId, CompletableFuture<WithdrawResult> result, long createdNanos) {
+    }
+
+    private final long ttlNanos;
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // 登録順の記録（古いものから捨てるため）
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    // 再送として処理を省略した件数
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param ttlMillis  結果を保持する期間（ミリ秒）
+     * @param maxEntries 保持する要求IDの最大数
+     */
+    public WithdrawDedupCache(long ttlMillis, int maxEntries) {
+        if (ttlMillis <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("保持期間と最大件数は1以上でなければなりません。");
+        }
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 要求IDが初めてなら action を実行してその結果を覚え、処理済みなら覚えている結果を返す。
+     * action の後に commit（変更ログの fsync 待ちなど）を行い、commit が終わってから結果を再送に公開する。
+     * commit が失敗した場合はその例外を覚え、再送にも同じ例外を投げる（出金はすでに反映されているため、再実行しない）。
+     * action が失敗した場合は何も覚えず、処理の終わりを待っていた再送は最初から処理し直す。
+     *
+     * @param requestId 要求ID（呼び出し元が要求ごとに発行する）
+     * @param action    出金処理（例外を投げるのは口座を更新する前に失敗した場合に限ること）
+     * @param commit    結果の確定後に行う処理（確定した結果を受け取る）
+     * @return 出金結果
+     */
+    public WithdrawResult execute(String requestId, Supplier<WithdrawResult> action,
+                                  Consumer<WithdrawResult> commit) {
+        if (requestId == null || requestId.isEmpty()) {
+            throw new IllegalArgumentException("要求IDを指定してください。");
+        }
+        long now = System.nanoTime();
+        Entry mine = new Entry(requestId, new CompletableFuture<>(), now);
+        while (true) {
+            Entry existing = entries.putIfAbsent(requestId, mine);
+            if (existing == null) {
+                break;
+            }
+            if (!existing.result().isDone() || !isExpired(existing, now)) {
+                WithdrawResult previous = awaitResult(existing);   // 処理中なら終わるまで待つ
+                if (previous != null) {
+                    hits.increment();
+                    return previous;
+                }
+                continue;   // 最初の処理が口座を更新する前に失敗した：処理し直す
+            }
+            // 期限切れの記録がまだ残っている場合は置き換える
+            if (entries.replace(requestId, existing, mine)) {
+                break;
+            }
+        }
+        order.add(mine);
+        size.incrementAndGet();
+        evict(now);
+
+        WithdrawResult result;
+        try {
+            result = action.get();
+        } catch (RuntimeException | Error e) {
+            // 口座を更新する前に失敗した要求は覚えない（待っている再送には null を返して再実行させる）
+            entries.remove(requestId, mine);
+            mine.result().complete(null);
+            throw e;
+        }
+        try {
+            commit.accept(result);
+        } catch (RuntimeException | Error e) {
+            mine.result().completeExceptionally(e);
+            throw e;
+        }
+        mine.result().complete(result);
+        return result;
+    }
+
+    /**
+     * 記録の処理が終わるのを待って結果を返す。最初の処理が口座を更新する前に失敗した場合は null を返す。
+     * commit で失敗していた場合は、その例外をそのまま投げる。
+     */
+    private static WithdrawResult awaitResult(Entry entry) {
+        try {
+            return entry.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * 期限切れの記録と、上限を超えた古い記録を捨てる。
+     * 最も古い記録がまだ処理中の場合は、捨てずに次の機会に回す（処理中の要求の再送を再実行させない）。
+     */
+    private void evict(long now) {
+        while (true) {
+            Entry oldest = order.peek();
+            if (oldest == null) return;
+            if (size.get() <= maxEntries && !isExpired(oldest, now)) return;
+            if (!oldest.result().isDone()) return;
+            if (order.remove(oldest)) {
+                size.decrementAndGet();
+                entries.remove(oldest.requestId(), oldest);
+            }
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdNanos() > ttlNanos;
+    }
+
+    /**
+     * 保持している要求IDの数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 再送として処理を省略した件数
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+}
@@ -0,0 +1,11 @@
+package asm03.models;
+
+/**
+ * 出金要求（{@link DigitalBank#withdraw(WithdrawRequest)}、一括出金 {@link DigitalBank#withdrawBatch} の1件分）。
+ *
+ * @param customerId    個人番号
+ * @param accountNumber 出金したい口座番号
+ * @param amount        出金額（最小単位）
+ */
+public record WithdrawRequest(String customerId, String accountNumber, long amount) {
+}
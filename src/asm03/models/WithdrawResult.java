@@ -0,0 +1,29 @@
+package asm03.models;
+
+/**
+ * 出金要求の処理結果。
+ */
+public enum WithdrawResult {
+    SUCCESS("成功"),
+    REJECTED("出金条件を満たさない"),
+    ACCOUNT_NOT_FOUND("口座が存在しない"),
+    CUSTOMER_MISMATCH("口座の保有者と個人番号が一致しない"),
+    NOT_WITHDRAWABLE("出金に対応していない口座");
+
+    private final String label;
+
+    WithdrawResult(String label) {
+        this.label = label;
+    }
+
+    /**
+     * 表示用の説明を返す。
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+}
@@ -0,0 +1,577 @@
+package asm03.models;
+
+import asm02.models.Account;
+import asm02.models.BankListener;
+import asm02.models.Customer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * DigitalBank の変更ログ（先行書き込みログ）。
+ * 顧客の登録・口座の追加・氏名の変更・取引・利息計上の開始をバイナリ形式で追記し、起動時に再生して銀行を復元する。
+ * <ul>
+ *   <li>記録はメモリ上のバッファに積むだけで、ファイルへの書き込みと fsync は専用スレッドが行う</li>
+ *   <li>fsync の間に積まれた記録は次の fsync でまとめて書き込む（グループコミット）</li>
+ *   <li>出金などの呼び出し側は {@link #awaitDurable()} で自分の記録が fsync されるまで待つ</li>
+ * </ul>
+ * 1件の記録の形式: [int 長さ][byte 種類 + 内容][int CRC32]
+ * スナップショット取得時は {@link #rotate()} でログを改名して新しいログに切り替え、古いログ（*.old, *.old.1, ...）は
+ * スナップショットの書き込み完了後に削除する。
+ */
+public final class WriteAheadLog implements BankListener, JournalListener, Closeable {
+
+    private static final byte CUSTOMER = 1;
+    private static final byte ACCOUNT = 2;
+    private static final byte RENAME = 3;
+    private static final byte TRANSACTION = 4;
+    private static final byte ACCRUAL = 5;
+
+    // 1件の記録の最大長（破損した長さを読み込んだ場合の防御）
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    // 未書き込みの記録がこのサイズを超えたら、書き込みが追いつくまで追記側を待たせる
+    private static final int MAX_PENDING_BYTES = 8 << 20;
+
+    private static final int ACCOUNT_KEY_SPACE = 1_000_000;
+
+    // スレッドごとの最後に追記した記録の番号（awaitDurable で使う）
+    private static final ThreadLocal<long[]> LAST_APPENDED = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * 変更ログの再生結果
+     *
+     * @param records    適用した記録の件数
+     * @param skipped    スナップショットに含まれていた等の理由で読み飛ばした記録の件数
+     * @param validBytes 正常に読み込めた範囲のバイト数（以降は書き込み途中の記録として切り捨てる）
+     */
+    public record ReplayResult(long records, long skipped, long validBytes) {
+    }
+
+    private final DigitalBank bank;
+    private final Path path;
+    private FileChannel channel;        // 書き込み先（rotate で切り替える）
+    private final Thread flusher;
+    private final CRC32 crc = new CRC32();
+
+    // 追記中のバッファと、書き込み中のバッファ（flusher が入れ替える）
+    private ByteBuffer active = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer flushing = ByteBuffer.allocate(64 * 1024);
+
+    private long appendedSeq;   // 追記した記録の番号
+    private long durableSeq;    // fsync 済みの記録の番号
+    private boolean closed;
+    private boolean rotating;   // ログの切り替え中（新しい記録の追記を待たせる）
+    private IOException failure;
+
+    private WriteAheadLog(DigitalBank bank, Path path, FileChannel channel) {
+        this.bank = bank;
+        this.path = path;
+        this.channel = channel;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 変更ログを開く。
+     * 既存のログ（切り替え前の古いログがあれば古い順にそれを先に）を再生して bank を復元し、
+     * 書き込み途中の末尾を切り捨ててから、以降の変更の記録を開始する。
+     *
+     * @param path 変更ログのファイル
+     * @param bank 復元先の銀行（空、またはスナップショットから読み込んだ状態）
+     */
+    public static WriteAheadLog open(Path path, DigitalBank bank) throws IOException {
+        for (int index = 0; Files.exists(rotatedPath(path, index)); index++) {
+            replay(rotatedPath(path, index), bank);
+        }
+        ReplayResult result = replay(path, bank);
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(result.validBytes());
+        channel.position(result.validBytes());
+
+        WriteAheadLog log = new WriteAheadLog(bank, path, channel);
+        bank.setListener(log);
+        TransactionJournal.shared().setListener(log);
+        bank.attachLog(log);
+        return log;
+    }
+
+    /* ======================= 追記 ======================= */
+
+    @Override
+    public void onCustomerAdded(Customer customer) {
+        byte[] id = utf8(customer.getCustomerId());
+        byte[] name = utf8(customer.getName());
+        synchronized (this) {
+            int start = begin(CUSTOMER, 4 + id.length + name.length);
+            putString(id);
+            putString(name);
+            end(start);
+        }
+    }
+
+    @Override
+    public void onAccountAdded(Customer owner, Account account) {
+        byte[] customerId = utf8(owner.getCustomerId());
+        synchronized (this) {
+            int start = begin(ACCOUNT, 2 + customerId.length + 4 + 1 + 8);
+            putString(customerId);
+            active.putInt(TransactionJournal.accountKey(account.getAccountNumber()));
+            active.put((byte) AccountKind.of(account).ordinal());
+            active.putLong(account.getBalance());
+            end(start);
+        }
+    }
+
+    @Override
+    public void onCustomerRenamed(Customer customer) {
+        byte[] id = utf8(customer.getCustomerId());
+        byte[] name = utf8(customer.getName());
+        synchronized (this) {
+            int start = begin(RENAME, 4 + id.length + name.length);
+            putString(id);
+            putString(name);
+            end(start);
+        }
+    }
+
+    @Override
+    public void onRecorded(String accountNumber, int sequence, long id, long amount, long time,
+                           boolean status, TransactionType type, long balanceDelta) {
+        int accountKey = TransactionJournal.accountKey(accountNumber);
+        synchronized (this) {
+            int start = begin(TRANSACTION, 4 + 4 + 8 + 8 + 8 + 1 + 8);
+            active.putInt(accountKey);
+            active.putInt(sequence);
+            active.putLong(id);
+            active.putLong(amount);
+            active.putLong(time);
+            active.put((byte) ((type.ordinal() << 1) | (status ? 1 : 0)));
+            active.putLong(balanceDelta);
+            end(start);
+        }
+    }
+
+    /**
+     * 同じ口座の出金をまとめて記録する（ログのロックは1回だけ取る）。
+     */
+    @Override
+    public void onWithdrawalsRecorded(String accountNumber, int firstSequence, long[] ids, long[] amounts,
+                                      long[] times, long[] balanceDeltas, int count) {
+        int accountKey = TransactionJournal.accountKey(accountNumber);
+        byte flags = (byte) ((TransactionType.WITHDRAW.ordinal() << 1) | 1);
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                int start = begin(TRANSACTION, 4 + 4 + 8 + 8 + 8 + 1 + 8);
+                active.putInt(accountKey);
+                active.putInt(firstSequence + i);
+                active.putLong(ids[i]);
+                active.putLong(amounts[i]);
+                active.putLong(times[i]);
+                active.put(flags);
+                active.putLong(balanceDeltas[i]);
+                end(start);
+            }
+        }
+    }
+
+    /**
+     * 営業日の利息計上の開始を記録する（その日の利息の取引より先に呼び出される）。
+     *
+     * @param epochDay 営業日（エポック日）
+     */
+    public void onAccrualStarted(long epochDay) {
+        synchronized (this) {
+            int start = begin(ACCRUAL, 8);
+            active.putLong(epochDay);
+            end(start);
+        }
+    }
+
+    /**
+     * 記録の書き始め：バッファを確保し、長さの位置を空けて種類を書く。
+     * 戻り値は記録の開始位置。
+     */
+    private int begin(byte type, int bodyLength) {
+        while ((rotating || active.position() > MAX_PENDING_BYTES) && failure == null && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        ensureCapacity(4 + 1 + bodyLength + 4);
+        int start = active.position();
+        active.putInt(0);
+        active.put(type);
+        return start;
+    }
+
+    /**
+     * 記録の書き終わり：長さと CRC を埋め、記録番号を進めて書き込みスレッドを起こす。
+     */
+    private void end(int start) {
+        int length = active.position() - start - 4;
+        active.putInt(start, length);
+        crc.reset();
+        crc.update(active.array(), start + 4, length);
+        active.putInt((int) crc.getValue());
+        LAST_APPENDED.get()[0] = ++appendedSeq;
+        notifyAll();
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (active.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(active.capacity() * 2, active.position() + bytes));
+            active.flip();
+            grown.put(active);
+            active = grown;
+        }
+    }
+
+    private void putString(byte[] bytes) {
+        active.putShort((short) bytes.length);
+        active.put(bytes);
+    }
+
+    private static byte[] utf8(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("文字列が長すぎるため記録できません。");
+        }
+        return bytes;
+    }
+
+    /* ======================= 書き込み・待ち合わせ ======================= */
+
+    /**
+     * 書き込みスレッド：溜まった記録をまとめて書き込み、fsync する。
+     */
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer toWrite;
+            FileChannel target;
+            long batchSeq;
+            synchronized (this) {
+                while (active.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (active.position() == 0) {
+                    return;                                  // close 済みで書き込むものがない
+                }
+                toWrite = active;
+                active = flushing;
+                active.clear();
+                flushing = toWrite;
+                batchSeq = appendedSeq;
+                target = channel;
+                notifyAll();                                 // バッファの空きを待っている追記側を起こす
+            }
+
+            try {
+                toWrite.flip();
+                while (toWrite.hasRemaining()) {
+                    target.write(toWrite);
+                }
+                target.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                durableSeq = batchSeq;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 現在のスレッドが最後に追記した記録の番号（他のスレッドに記録を任せた場合の引き継ぎ用）
+     */
+    static long lastAppended() {
+        return LAST_APPENDED.get()[0];
+    }
+
+    /**
+     * 他のスレッドが代わりに追記した記録の番号を、現在のスレッドが最後に追記した記録として引き継ぐ
+     * （{@link #awaitDurable()} でその記録まで待てるようにする）。
+     */
+    static void inheritAppended(long seq) {
+        LAST_APPENDED.get()[0] = seq;   // 引き継ぐ記録は、現在のスレッドがそれまでに追記した記録より後に追記されている
+    }
+
+    /**
+     * 現在のスレッドが最後に追記した記録が fsync されるまで待つ。
+     *
+     * @throws UncheckedIOException ログの書き込みに失敗している場合
+     */
+    public void awaitDurable() {
+        long target = LAST_APPENDED.get()[0];
+        synchronized (this) {
+            boolean interrupted = false;
+            while (durableSeq < target && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("変更ログの書き込みに失敗しました。", failure);
+            }
+        }
+    }
+
+    /**
+     * ログを切り替える（スナップショット取得の開始時に呼び出す）。
+     * 新しい記録の追記を止めてそれまでの記録をすべて fsync し、現在のログを *.old に改名して、
+     * 新しい空のログに書き込み先を切り替える（ファイルの内容はコピーしないため、追記を止める時間は短い）。
+     * 前回のスナップショットが完了せず古いログが残っている場合は、*.old.1, *.old.2, ... の順に名前を付けて残す。
+     * 切り替え前の記録はすべてメモリ上の状態に反映済みのため、この後に取得したスナップショットに含まれる。
+     *
+     * @return 切り替え前のログ（スナップショットの書き込み完了後に {@link #discardRotated()} で削除する）
+     */
+    public synchronized Path rotate() throws IOException {
+        rotating = true;
+        try {
+            // 追記を止めているため、書き込みスレッドが追いつけば必ず空になる
+            while ((active.position() > 0 || durableSeq < appendedSeq) && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("ログの切り替えが中断されました。", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+
+            // 書き込みスレッドは待機中（未書き込みの記録がない）のため、ここで書き込み先を切り替えてよい
+            int index = 0;
+            while (Files.exists(rotatedPath(path, index))) {
+                index++;
+            }
+            Path rotated = rotatedPath(path, index);
+            Files.move(path, rotated, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel next = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            forceDirectory(path);
+            channel.close();
+            channel = next;
+            return rotated;
+        } finally {
+            rotating = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * 改名・作成したファイルの名前を確定させるため、ディレクトリを fsync する（対応していない環境では何もしない）。
+     * スナップショットの置き換え（{@link BankSnapshot#write}）からも使う。
+     */
+    static void forceDirectory(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Windows などディレクトリを開けない環境では、ファイルシステムに任せる
+        }
+    }
+
+    /**
+     * 切り替え前のログをすべて削除する（スナップショットの書き込みが完了した後に呼び出す）。
+     * 途中で失敗しても古い順の連番が途切れないよう、新しいものから削除する。
+     */
+    public void discardRotated() throws IOException {
+        int count = 0;
+        while (Files.exists(rotatedPath(path, count))) {
+            count++;
+        }
+        for (int index = count - 1; index >= 0; index--) {
+            Files.deleteIfExists(rotatedPath(path, index));
+        }
+    }
+
+    /**
+     * 切り替え前のログのファイル名（0 番目は *.old、以降は *.old.1, *.old.2, ...）
+     */
+    private static Path rotatedPath(Path path, int index) {
+        String name = path.getFileName() + ".old";
+        return path.resolveSibling(index == 0 ? name : name + "." + index);
+    }
+
+    /**
+     * 未書き込みの記録をすべて書き込んでから、ログを閉じる。
+     */
+    @Override
+    public void close() throws IOException {
+        bank.setListener(null);
+        TransactionJournal.shared().setListener(null);
+        bank.attachLog(null);
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /* ======================= 再生 ======================= */
+
+    /**
+     * 変更ログを読み込み、記録を順に bank に適用する。
+     * 末尾の書き込み途中の記録（長さ不足・CRC 不一致）に達したら、そこで読み込みを終える。
+     * スナップショットから読み込んだ後に呼び出した場合、スナップショットに含まれている取引は読み飛ばす。
+     */
+    public static ReplayResult replay(Path path, DigitalBank bank) throws IOException {
+        if (!Files.exists(path)) {
+            return new ReplayResult(0, 0, 0);
+        }
+
+        // 口座キー → 口座（口座番号は 6 桁のため配列で引ける）
+        Account[] accounts = new Account[ACCOUNT_KEY_SPACE];
+        for (Customer customer : bank.getCustomers()) {
+            for (Account account : customer.getAccounts()) {
+                accounts[TransactionJournal.accountKey(account.getAccountNumber())] = account;
+            }
+        }
+
+        long records = 0;
+        long skipped = 0;
+        long validBytes = 0;
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[256];
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 20))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                    if (length < 1 || length > MAX_RECORD_LENGTH) break;
+                    if (buffer.length < length) buffer = new byte[Math.max(length, buffer.length * 2)];
+                    in.readFully(buffer, 0, length);
+                    int storedCrc = in.readInt();
+                    crc.reset();
+                    crc.update(buffer, 0, length);
+                    if ((int) crc.getValue() != storedCrc) break;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (apply(ByteBuffer.wrap(buffer, 0, length), bank, accounts)) {
+                    records++;
+                } else {
+                    skipped++;
+                }
+                validBytes += 4L + length + 4;
+            }
+        }
+        return new ReplayResult(records, skipped, validBytes);
+    }
+
+    /**
+     * 1件の記録を適用する。適用済み・適用先なしで読み飛ばした場合は false を返す。
+     */
+    private static boolean apply(ByteBuffer record, DigitalBank bank, Account[] accounts) {
+        byte type = record.get();
+        switch (type) {
+            case CUSTOMER -> {
+                String id = getString(record);
+                String name = getString(record);
+                if (bank.findCustomerById(id) != null) return false;
+                return bank.addCustomers(List.of(new Customer(name, id))) == 1;
+            }
+            case ACCOUNT -> {
+                Customer owner = bank.findCustomerById(getString(record));
+                int accountKey = record.getInt();
+                AccountKind kind = AccountKind.ofCode(record.get());
+                long balance = record.getLong();
+                String accountNumber = TransactionJournal.accountNumber(accountKey);
+                if (owner == null || bank.isAccountExisted(accountNumber)) return false;
+                Account account = kind.create(accountNumber, balance);
+                if (!owner.addAccount(account)) return false;
+                accounts[accountKey] = account;
+                return true;
+            }
+            case RENAME -> {
+                Customer customer = bank.findCustomerById(getString(record));
+                String name = getString(record);
+                if (customer == null) return false;
+                customer.setName(name);
+                return true;
+            }
+            case TRANSACTION -> {
+                int accountKey = record.getInt();
+                int sequence = record.getInt();
+                long id = record.getLong();
+                long amount = record.getLong();
+                long time = record.getLong();
+                int flags = record.get();
+                long balanceDelta = record.getLong();
+
+                Account account = accounts[accountKey];
+                if (!(account instanceof HistoryProvider provider)) return false;
+                AccountHistory history = provider.getHistory();
+                if (sequence != history.size()) return false;   // スナップショットに含まれている、または欠落がある
+                TransactionType transactionType = TransactionType.ofCode(flags >>> 1);
+                history.restore(account.getAccountNumber(), id, amount, time, (flags & 1) != 0, transactionType);
+                account.setBalance(account.getBalance() + balanceDelta);
+                if (transactionType == TransactionType.INTEREST && account instanceof Accrual accrual) {
+                    // 利息の取引は、直前に再生した利息計上の開始の営業日の分
+                    accrual.setLastAccrualDay(bank.lastAccrualDay());
+                }
+                return true;
+            }
+            case ACCRUAL -> {
+                long epochDay = record.getLong();
+                if (bank.lastAccrualDay() >= epochDay) return false;   // スナップショットに含まれている
+                bank.restoreLastAccrualDay(epochDay);
+                return true;
+            }
+            default -> throw new IllegalStateException("不明な記録の種類です: " + type);
+        }
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getShort() & 0xFFFF;
+        String value = new String(record.array(), record.arrayOffset() + record.position(), length,
+                StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+}